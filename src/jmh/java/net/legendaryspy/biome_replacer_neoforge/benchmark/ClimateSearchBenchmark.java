@@ -0,0 +1,103 @@
+package net.legendaryspy.biome_replacer_neoforge.benchmark;
+
+import com.mojang.datafixers.util.Pair;
+import net.legendaryspy.biome_replacer_neoforge.climate.PackedParameterList;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.Climate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Climate lookups in the vanilla search tree and the packed one, for random surface and
+ * underground targets. Setup fails if the packed tree ever returns a farther biome.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClimateSearchBenchmark {
+    private static final int QUERIES = 4096;
+
+    @Param({"vanilla", "terralith"})
+    public String preset;
+
+    @Param({"vanilla", "packed"})
+    public String search;
+
+    private Climate.ParameterList<ResourceKey<Biome>> parameters;
+    private Climate.TargetPoint[] queries;
+
+    @Setup
+    public void setup() {
+        List<Pair<Climate.ParameterPoint, ResourceKey<Biome>>> points = preset.equals("vanilla")
+                ? InMemoryBiomes.vanillaOverworld()
+                : InMemoryBiomes.terralithSized();
+        Climate.ParameterList<ResourceKey<Biome>> vanilla = new Climate.ParameterList<>(points);
+        parameters = search.equals("packed") ? new PackedParameterList<>(points) : vanilla;
+
+        // Consecutive queries walk along x like a chunk fill, so the warm start gets some use
+        Random random = new Random(42);
+        queries = new Climate.TargetPoint[QUERIES];
+        float[] climate = new float[6];
+        for (int i = 0; i < QUERIES; i++) {
+            if (i % 16 == 0) {
+                for (int axis = 0; axis < climate.length; axis++) {
+                    climate[axis] = random.nextFloat() * 2.0F - 1.0F;
+                }
+                climate[4] = random.nextBoolean() ? 0.0F : random.nextFloat(); // depth
+            }
+            climate[0] += (random.nextFloat() - 0.5F) * 0.02F;
+            climate[5] += (random.nextFloat() - 0.5F) * 0.02F;
+            queries[i] = Climate.target(climate[0], climate[1], climate[2], climate[3], climate[4], climate[5]);
+        }
+
+        for (Climate.TargetPoint query : queries) {
+            long expected = fitness(points, query, vanilla.findValue(query));
+            long actual = fitness(points, query, parameters.findValue(query));
+            if (actual != expected) {
+                throw new IllegalStateException("Packed search returned a farther biome for " + query);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void findValue(Blackhole blackhole) {
+        for (Climate.TargetPoint query : queries) {
+            blackhole.consume(parameters.findValue(query));
+        }
+    }
+
+    // Squared distance from the target to the closest point of the given biome
+    private static long fitness(List<Pair<Climate.ParameterPoint, ResourceKey<Biome>>> points,
+                                Climate.TargetPoint target, ResourceKey<Biome> biome) {
+        long[] values = {target.temperature(), target.humidity(), target.continentalness(), target.erosion(),
+                target.depth(), target.weirdness(), 0L};
+        long best = Long.MAX_VALUE;
+        for (Pair<Climate.ParameterPoint, ResourceKey<Biome>> point : points) {
+            if (point.getSecond() != biome) {
+                continue;
+            }
+            List<Climate.Parameter> space = point.getFirst().parameterSpace();
+            long fitness = 0;
+            for (int axis = 0; axis < values.length; axis++) {
+                long distance = space.get(axis).distance(values[axis]);
+                fitness += distance * distance;
+            }
+            best = Math.min(best, fitness);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,59 @@
+package net.legendaryspy.biome_replacer_neoforge.benchmark;
+
+import net.legendaryspy.biome_replacer_neoforge.config.Config;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing generated rule files with a realistic mix of options, comments, direct and tag rules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigParseBenchmark {
+
+    @Param({"1000", "10000"})
+    public int lines;
+
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile("biome_replacer_bench", ".properties");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+            writer.println("muteChatInfo = true");
+            for (int i = 0; i < lines; i++) {
+                switch (i % 4) {
+                    case 0 -> writer.println("! generated rule block " + i);
+                    case 1 -> writer.println("bench:biome_" + i + " > bench:target_" + (i % 50));
+                    case 2 -> writer.println("bench:biome_" + i + " > bench:target_" + (i % 50) + " 0.25");
+                    default -> writer.println("#bench:tag_" + (i % 200) + " > bench:target_" + (i % 50) + " 0.5");
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int parse() {
+        Config.Settings settings = Config.parse(file);
+        return settings.rules().size() + settings.tagRules().size();
+    }
+}
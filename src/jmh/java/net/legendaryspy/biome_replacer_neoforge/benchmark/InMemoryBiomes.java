@@ -0,0 +1,134 @@
+package net.legendaryspy.biome_replacer_neoforge.benchmark;
+
+import com.mojang.datafixers.util.Pair;
+import com.mojang.serialization.Lifecycle;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.Holder;
+import net.minecraft.core.MappedRegistry;
+import net.minecraft.core.RegistrationInfo;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeGenerationSettings;
+import net.minecraft.world.level.biome.BiomeSpecialEffects;
+import net.minecraft.world.level.biome.Climate;
+import net.minecraft.world.level.biome.MobSpawnSettings;
+import net.minecraft.world.level.biome.OverworldBiomeBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Headless stand-in for the server's biome registry: plain biomes with no features or spawns,
+ * registered and tagged in memory so rule compilation and lookups run without a game instance.
+ */
+final class InMemoryBiomes {
+    static {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+    }
+
+    final MappedRegistry<Biome> registry;
+    final List<Holder.Reference<Biome>> holders = new ArrayList<>();
+
+    private InMemoryBiomes(Set<ResourceKey<Biome>> keys, int tagCount) {
+        registry = new MappedRegistry<>(Registries.BIOME, Lifecycle.stable());
+        for (ResourceKey<Biome> key : keys) {
+            holders.add(registry.register(key, createBiome(), RegistrationInfo.BUILT_IN));
+        }
+        registry.freeze();
+
+        // Biome i belongs to tag i % tagCount
+        Map<TagKey<Biome>, List<Holder<Biome>>> tags = new HashMap<>();
+        for (int i = 0; i < holders.size() && tagCount > 0; i++) {
+            tags.computeIfAbsent(tag(i % tagCount), k -> new ArrayList<>()).add(holders.get(i));
+        }
+        registry.bindTags(tags);
+    }
+
+    /**
+     * Creates {@code count} synthetic biomes named {@code bench:biome_<i>}.
+     */
+    static InMemoryBiomes synthetic(int count, int tagCount) {
+        Set<ResourceKey<Biome>> keys = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            keys.add(biome(i));
+        }
+        return new InMemoryBiomes(keys, tagCount);
+    }
+
+    /**
+     * Creates every biome referenced by the given parameter points.
+     */
+    static InMemoryBiomes forPoints(List<Pair<Climate.ParameterPoint, ResourceKey<Biome>>> points) {
+        Set<ResourceKey<Biome>> keys = new LinkedHashSet<>();
+        points.forEach(point -> keys.add(point.getSecond()));
+        return new InMemoryBiomes(keys, 0);
+    }
+
+    /**
+     * The vanilla overworld preset's parameter points.
+     */
+    static List<Pair<Climate.ParameterPoint, ResourceKey<Biome>>> vanillaOverworld() {
+        List<Pair<Climate.ParameterPoint, ResourceKey<Biome>>> points = new ArrayList<>();
+        new OverworldBiomeBuilder().addBiomes(points::add);
+        return points;
+    }
+
+    /**
+     * A preset roughly the size of Terralith's: every vanilla point split in three along
+     * weirdness, spread over a few hundred biomes.
+     */
+    static List<Pair<Climate.ParameterPoint, ResourceKey<Biome>>> terralithSized() {
+        List<Pair<Climate.ParameterPoint, ResourceKey<Biome>>> points = new ArrayList<>();
+        List<Pair<Climate.ParameterPoint, ResourceKey<Biome>>> vanilla = vanillaOverworld();
+        for (int i = 0; i < vanilla.size(); i++) {
+            Climate.ParameterPoint point = vanilla.get(i).getFirst();
+            long min = point.weirdness().min();
+            long step = Math.max(1, (point.weirdness().max() - min) / 3);
+            for (int part = 0; part < 3; part++) {
+                long partMax = part == 2 ? point.weirdness().max() : min + step * (part + 1);
+                Climate.ParameterPoint split = new Climate.ParameterPoint(point.temperature(), point.humidity(),
+                        point.continentalness(), point.erosion(), point.depth(),
+                        new Climate.Parameter(min + step * part, partMax), point.offset());
+                points.add(Pair.of(split, biome((i * 7 + part) % 300)));
+            }
+        }
+        return points;
+    }
+
+    Holder<Biome> get(ResourceKey<Biome> key) {
+        return registry.getHolderOrThrow(key);
+    }
+
+    static ResourceKey<Biome> biome(int index) {
+        return ResourceKey.create(Registries.BIOME, ResourceLocation.fromNamespaceAndPath("bench", "biome_" + index));
+    }
+
+    static TagKey<Biome> tag(int index) {
+        return TagKey.create(Registries.BIOME, ResourceLocation.fromNamespaceAndPath("bench", "tag_" + index));
+    }
+
+    private static Biome createBiome() {
+        return new Biome.BiomeBuilder()
+                .hasPrecipitation(false)
+                .temperature(0.5F)
+                .downfall(0.5F)
+                .specialEffects(new BiomeSpecialEffects.Builder()
+                        .fogColor(0)
+                        .waterColor(0)
+                        .waterFogColor(0)
+                        .skyColor(0)
+                        .build())
+                .mobSpawnSettings(MobSpawnSettings.EMPTY)
+                .generationSettings(BiomeGenerationSettings.EMPTY)
+                .build();
+    }
+}
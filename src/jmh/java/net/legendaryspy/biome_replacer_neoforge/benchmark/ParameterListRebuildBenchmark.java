@@ -0,0 +1,71 @@
+package net.legendaryspy.biome_replacer_neoforge.benchmark;
+
+import com.mojang.datafixers.util.Pair;
+import net.legendaryspy.biome_replacer_neoforge.climate.ParameterListRebuilder;
+import net.legendaryspy.biome_replacer_neoforge.config.Config;
+import net.legendaryspy.biome_replacer_neoforge.config.Config.BiomeReplacement;
+import net.legendaryspy.biome_replacer_neoforge.rules.ReplacementTable;
+import net.legendaryspy.biome_replacer_neoforge.rules.RuleCompiler;
+import net.minecraft.core.Holder;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.Climate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rebuilding a replaced parameter list, where every third biome of the preset is replaced
+ * by one of a handful of targets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParameterListRebuildBenchmark {
+    private static final int TARGETS = 5;
+
+    @Param({"vanilla", "terralith"})
+    public String preset;
+
+    @Param({"true", "false"})
+    public boolean optimize;
+
+    private Climate.ParameterList<Holder<Biome>> parameters;
+    private ReplacementTable table;
+    private Config.Settings settings;
+
+    @Setup
+    public void setup() {
+        List<Pair<Climate.ParameterPoint, ResourceKey<Biome>>> points = preset.equals("vanilla")
+                ? InMemoryBiomes.vanillaOverworld()
+                : InMemoryBiomes.terralithSized();
+        InMemoryBiomes biomes = InMemoryBiomes.forPoints(points);
+
+        List<Pair<Climate.ParameterPoint, Holder<Biome>>> values = new ArrayList<>(points.size());
+        points.forEach(point -> values.add(Pair.of(point.getFirst(), biomes.get(point.getSecond()))));
+        parameters = new Climate.ParameterList<>(values);
+
+        Config.Builder builder = new Config.Builder();
+        builder.optimizeParameters = optimize;
+        for (int i = TARGETS; i < biomes.holders.size(); i += 3) {
+            String target = biomes.holders.get(i % TARGETS).key().location().toString();
+            builder.rules.put(biomes.holders.get(i).key().location().toString(), new BiomeReplacement(target, 1.0));
+        }
+        settings = builder.build();
+        table = new RuleCompiler(biomes.registry, 0L).compile(settings);
+    }
+
+    @Benchmark
+    public Climate.ParameterList<Holder<Biome>> rebuild() {
+        return ParameterListRebuilder.build(parameters, table, settings).parameters();
+    }
+}
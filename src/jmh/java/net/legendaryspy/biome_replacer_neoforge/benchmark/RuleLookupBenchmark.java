@@ -0,0 +1,74 @@
+package net.legendaryspy.biome_replacer_neoforge.benchmark;
+
+import net.legendaryspy.biome_replacer_neoforge.config.Config;
+import net.legendaryspy.biome_replacer_neoforge.config.Config.BiomeReplacement;
+import net.legendaryspy.biome_replacer_neoforge.rules.ReplacementTable;
+import net.legendaryspy.biome_replacer_neoforge.rules.RuleCompiler;
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.biome.Biome;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replacement lookups for biomes matched by direct or tag rules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RuleLookupBenchmark {
+    private static final int BIOMES = 2000;
+    private static final int QUERIES = 4096;
+
+    @Param({"10", "100", "1000"})
+    public int ruleCount;
+
+    @Param({"direct", "tag"})
+    public String ruleKind;
+
+    private ReplacementTable table;
+    private Holder<Biome>[] queries;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        boolean tags = ruleKind.equals("tag");
+        InMemoryBiomes biomes = InMemoryBiomes.synthetic(BIOMES, tags ? ruleCount : 0);
+
+        Config.Builder settings = new Config.Builder();
+        for (int i = 0; i < ruleCount; i++) {
+            String target = InMemoryBiomes.biome(BIOMES - 1 - i).location().toString();
+            if (tags) {
+                settings.tagRules.put(InMemoryBiomes.tag(i).location().toString(), List.of(new BiomeReplacement(target, 1.0)));
+            } else {
+                settings.rules.put(InMemoryBiomes.biome(i).location().toString(), new BiomeReplacement(target, 1.0));
+            }
+        }
+        table = new RuleCompiler(biomes.registry, 0L).compile(settings.build());
+
+        Random random = new Random(42);
+        queries = new Holder[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = biomes.holders.get(random.nextInt(BIOMES));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void lookup(Blackhole blackhole) {
+        for (Holder<Biome> query : queries) {
+            blackhole.consume(table.apply(query));
+        }
+    }
+}
@@ -1,53 +1,74 @@
 package net.legendaryspy.biome_replacer_neoforge;
 
+import net.minecraft.core.BlockPos;
 import net.minecraft.core.Holder;
 import net.minecraft.core.Registry;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.network.chat.Component;
-import net.minecraft.resources.ResourceKey;
-import net.minecraft.resources.ResourceLocation;
-import net.minecraft.tags.TagKey;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.Climate;
+import net.minecraft.world.level.storage.LevelResource;
 import net.neoforged.bus.api.EventPriority;
 import net.neoforged.bus.api.IEventBus;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.Mod;
 import net.neoforged.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.neoforged.neoforge.common.NeoForge;
+import net.neoforged.neoforge.event.RegisterCommandsEvent;
+import net.neoforged.neoforge.event.TagsUpdatedEvent;
 import net.neoforged.neoforge.event.entity.player.PlayerEvent;
 import net.neoforged.neoforge.event.server.ServerAboutToStartEvent;
 import net.neoforged.neoforge.event.server.ServerStartedEvent;
+import net.neoforged.neoforge.event.server.ServerStoppedEvent;
+import net.neoforged.neoforge.event.server.ServerStoppingEvent;
+import net.neoforged.neoforge.server.ServerLifecycleHooks;
+import net.legendaryspy.biome_replacer_neoforge.climate.BiomeSourceRefresher;
+import net.legendaryspy.biome_replacer_neoforge.climate.CachedParameterList;
+import net.legendaryspy.biome_replacer_neoforge.climate.ReplacedParameters;
+import net.legendaryspy.biome_replacer_neoforge.command.BiomeReplacerCommand;
 import net.legendaryspy.biome_replacer_neoforge.config.Config;
-import net.legendaryspy.biome_replacer_neoforge.config.Config.BiomeReplacement;
+import net.legendaryspy.biome_replacer_neoforge.config.ConfigWatcher;
+import net.legendaryspy.biome_replacer_neoforge.metrics.ReplacementMetrics;
+import net.legendaryspy.biome_replacer_neoforge.metrics.RulesReloadEvent;
+import net.legendaryspy.biome_replacer_neoforge.preview.BiomePreview;
+import net.legendaryspy.biome_replacer_neoforge.rules.CompiledRuleCache;
+import net.legendaryspy.biome_replacer_neoforge.rules.PublishedRules;
+import net.legendaryspy.biome_replacer_neoforge.rules.ReplacementTable;
+import net.legendaryspy.biome_replacer_neoforge.rules.RuleCompiler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Mod(BiomeReplacerNeoforge.MODID)
 public class BiomeReplacerNeoforge {
     public static final String MODID = "biome_replacer_neoforge";
     private static final Logger LOGGER = LogManager.getLogger();
     private static final String LOG_PREFIX = "[Biome_Replacer_Neoforge] ";
+    // "size[,y[,step]]": render an overworld preview around spawn after startup, then stop the server
+    private static final String PREVIEW_PROPERTY = MODID + ".preview";
+
+    // Reloads are parsed and compiled one at a time, away from the server and worldgen threads
+    private static final ExecutorService RELOAD_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Biome Replacer reload");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    // Changed from simple mapping to biome with probability info
-    private static final Map<ResourceKey<Biome>, List<ReplacementEntry>> directRules = new HashMap<>();
-    private static final Map<TagKey<Biome>, List<ReplacementEntry>> tagRules = new HashMap<>();
     private static Registry<Biome> biomeRegistry;
-    private static Random seedBasedRandom;
-    private static boolean rulesPrepared = false;
+    // Settings, compiled rules and replaced parameter lists, replaced as a whole on every
+    // reload; read lock-free by worldgen. Writers build the next one under PUBLISH_LOCK
+    private static volatile PublishedRules published = PublishedRules.EMPTY;
+    private static final Object PUBLISH_LOCK = new Object();
     private static long worldSeed = 0; // Default seed value
-
-    // Class to store biome replacement with probability
-    private static class ReplacementEntry {
-        public final ResourceKey<Biome> targetBiome;
-        public final double probability;
-
-        public ReplacementEntry(ResourceKey<Biome> targetBiome, double probability) {
-            this.targetBiome = targetBiome;
-            this.probability = probability;
-        }
-    }
+    private static ConfigWatcher configWatcher;
+    private static volatile CompiledRuleCache compiledRuleCache;
+    // Compiler of the current table; only used on the reload executor after startup
+    private static volatile RuleCompiler ruleCompiler;
 
     public BiomeReplacerNeoforge(IEventBus modEventBus) {
         log("Initializing Biome-Replacer-Neoforge");
@@ -60,8 +81,8 @@ public class BiomeReplacerNeoforge {
     }
 
     private void setup(final FMLCommonSetupEvent event) {
+        // Rules are read once the biome registry is available, see onServerAboutToStart
         log("Initializing BiomeReplacer");
-        loadConfig();
     }
 
     @SubscribeEvent(priority = EventPriority.HIGH)
@@ -70,9 +91,23 @@ public class BiomeReplacerNeoforge {
         try {
             biomeRegistry = event.getServer().registryAccess().registryOrThrow(Registries.BIOME);
 
-            // Initialize rules without requiring the world seed yet
-            seedBasedRandom = new Random(); // Use a temporary random until we get the real seed
-            prepareReplacementRules();
+            // The seed is known before any level (and so any biome source) is created,
+            // which lets chance rules be decided once at compile time
+            worldSeed = event.getServer().getWorldData().worldGenOptions().seed();
+            log("Using world seed for biome replacement: " + worldSeed);
+
+            // Registries are recreated for every server (e.g. reopening a singleplayer world),
+            // so compiled holders are never reused directly; the cache stores biome ids instead
+            CompiledRuleCache cache = new CompiledRuleCache(
+                    CompiledRuleCache.fileIn(event.getServer().getWorldPath(LevelResource.ROOT)), biomeRegistry);
+            cache.read();
+            compiledRuleCache = cache;
+            RuleCompiler compiler = new RuleCompiler(biomeRegistry, worldSeed);
+            ReplacementTable table = compiler.compile(cache);
+            // Levels don't exist yet, but their dimensions do: the replaced lists are ready
+            // before the first chunk is generated
+            publish(event.getServer(), compiler.settings(), table);
+            ruleCompiler = compiler;
         } catch (Exception e) {
             logError("Failed to initialize biome registry", e);
         }
@@ -80,245 +115,213 @@ public class BiomeReplacerNeoforge {
 
     @SubscribeEvent
     public void onServerStarted(ServerStartedEvent event) {
-        try {
-            // Now the overworld should be available
-            if (event.getServer().overworld() != null) {
-                worldSeed = event.getServer().overworld().getSeed();
-                log("Using world seed for biome replacement: " + worldSeed);
-                seedBasedRandom = new Random(worldSeed);
-            } else {
-                logWarn("Overworld still not available, using default random seed");
-                // Use a fixed seed if we still can't get the world seed
-                worldSeed = 12345L;
-                seedBasedRandom = new Random(worldSeed);
-            }
-        } catch (Exception e) {
-            logError("Failed to get world seed, using default", e);
-            worldSeed = 12345L;
-            seedBasedRandom = new Random(worldSeed);
+        MinecraftServer server = event.getServer();
+        String preview = System.getProperty(PREVIEW_PROPERTY);
+        if (preview != null && !preview.isBlank()) {
+            renderStartupPreview(server, preview);
+            return;
         }
-    }
-
-    @SubscribeEvent
-    public void onPlayerJoin(PlayerEvent.PlayerLoggedInEvent event) {
-        if (!Config.muteChatInfo) {
-            int totalDirectRules = directRules.values().stream()
-                    .mapToInt(List::size)
-                    .sum();
 
-            int totalTagRules = tagRules.values().stream()
-                    .mapToInt(List::size)
-                    .sum();
-
-            String message = "Biome Replacer is active with " + totalDirectRules +
-                    " direct replacement rules and " + totalTagRules + " tag rules.";
-            event.getEntity().sendSystemMessage(Component.literal(message));
-            log("Sent startup message to player: " + event.getEntity().getName().getString());
+        if (settings().watchConfig()) {
+            configWatcher = new ConfigWatcher(Config.filePath(), () -> reloadRules(server));
+            configWatcher.start();
         }
     }
 
-    // Added this public method to be called from the mixin
-    public static synchronized void prepareRulesIfNeeded() {
-        if (!rulesPrepared) {
-            log("Preparing biome replacement rules from mixin call");
-            directRules.clear();
-            tagRules.clear();
-            loadConfig();
-
-            // Only verify biomes if registry is available
-            if (biomeRegistry != null) {
-                verifyBiomes();
+    // Headless entry point for dev runs, e.g. ./gradlew runServer -Ppreview=10000,64
+    private static void renderStartupPreview(MinecraftServer server, String spec) {
+        BiomePreview.Area area;
+        BlockPos spawn = server.overworld().getSharedSpawnPos();
+        try {
+            String[] parts = spec.split(",");
+            int size = Integer.parseInt(parts[0].trim());
+            int y = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : spawn.getY();
+            area = parts.length > 2
+                    ? new BiomePreview.Area(spawn.getX(), spawn.getZ(), size, y, Integer.parseInt(parts[2].trim()))
+                    : BiomePreview.Area.of(spawn.getX(), spawn.getZ(), size, y);
+        } catch (NumberFormatException e) {
+            logWarn("Invalid " + PREVIEW_PROPERTY + " value '" + spec + "', expected size[,y[,step]]");
+            return;
+        }
+
+        log("Rendering startup biome preview (" + spec + ")");
+        BiomePreview.renderAsync(server.overworld(), area).whenComplete((result, error) -> {
+            if (error != null) {
+                logError("Failed to render biome preview", error);
             } else {
-                log("Biome registry not yet available, skipping verification");
+                log(result.describe() + " in " + result.image().getParent());
             }
-
-            rulesPrepared = true;
-        }
+            server.execute(() -> server.halt(false));
+        });
     }
 
-    private void prepareReplacementRules() {
-        if (!rulesPrepared) {
-            directRules.clear();
-            tagRules.clear();
-            loadConfig();
-            verifyBiomes();
-            rulesPrepared = true;
+    @SubscribeEvent
+    public void onServerStopping(ServerStoppingEvent event) {
+        if (configWatcher != null) {
+            configWatcher.stop();
+            configWatcher = null;
         }
-    }
 
-    private static void loadConfig() {
-        try {
-            Config.reload();
-
-            // Load direct replacement rules
-            Config.rules.forEach((key, value) -> {
-                ResourceKey<Biome> oldBiome = createBiomeKey(key);
-                ResourceKey<Biome> newBiome = createBiomeKey(value.targetBiome);
-                if (oldBiome != null && newBiome != null) {
-                    directRules.computeIfAbsent(oldBiome, k -> new ArrayList<>())
-                            .add(new ReplacementEntry(newBiome, value.probability));
-                    log("Rule added: " + oldBiome + " -> " + newBiome + " (prob: " + value.probability + ")");
-                }
-            });
-
-            // Load tag-based replacement rules
-            if (Config.tagRules != null) {
-                Config.tagRules.forEach((tagName, replacements) -> {
-                    try {
-                        // Using ResourceLocation.parse instead of constructor
-                        ResourceLocation tagLocation = ResourceLocation.parse(tagName);
-                        TagKey<Biome> tagKey = TagKey.create(Registries.BIOME, tagLocation);
-
-                        for (BiomeReplacement replacement : replacements) {
-                            ResourceKey<Biome> replacementKey = createBiomeKey(replacement.targetBiome);
-                            if (replacementKey != null) {
-                                tagRules.computeIfAbsent(tagKey, k -> new ArrayList<>())
-                                        .add(new ReplacementEntry(replacementKey, replacement.probability));
-                                log("Tag rule added: " + tagKey + " -> " + replacementKey +
-                                        " (prob: " + replacement.probability + ")");
-                            }
-                        }
-                    } catch (Exception e) {
-                        logWarn("Invalid tag rule: " + tagName);
-                    }
-                });
+        CompiledRuleCache cache = compiledRuleCache;
+        if (cache != null) {
+            if (settings().persistCache()) {
+                cache.saveIfDirty();
             }
+            compiledRuleCache = null;
+        }
+        ruleCompiler = null;
+
+        long hits = CachedParameterList.hits();
+        long misses = CachedParameterList.misses();
+        if (hits + misses > 0) {
+            log("Climate cache: " + hits + " hits, " + misses + " misses (" +
+                    String.format(Locale.ROOT, "%.1f", 100.0 * hits / (hits + misses)) + "% hit rate)");
+            CachedParameterList.resetCounters();
+        }
+    }
 
-            int totalDirectRules = directRules.values().stream().mapToInt(List::size).sum();
-            int totalTagRules = tagRules.values().stream().mapToInt(List::size).sum();
-
-            log("Loaded " + totalDirectRules + " direct biome replacement rules and " +
-                    totalTagRules + " tag rules");
-        } catch (Exception e) {
-            logError("Failed to load configuration", e);
+    @SubscribeEvent
+    public void onServerStopped(ServerStoppedEvent event) {
+        // Lets the lists of the closed world be collected
+        synchronized (PUBLISH_LOCK) {
+            published = PublishedRules.EMPTY;
         }
     }
 
-    private static void verifyBiomes() {
-        if (biomeRegistry == null) {
-            logWarn("Cannot verify biomes - registry not initialized");
+    @SubscribeEvent
+    public void onTagsUpdated(TagsUpdatedEvent event) {
+        // Tags are first bound before the rules are compiled; only later datapack reloads matter
+        if (event.getUpdateCause() != TagsUpdatedEvent.UpdateCause.SERVER_DATA_LOAD || ruleCompiler == null) {
             return;
         }
-
-        log("Verifying biome existence...");
-
-        // Verify direct rules
-        directRules.entrySet().removeIf(entry -> {
-            boolean sourceExists = biomeRegistry.containsKey(entry.getKey().location());
-            if (!sourceExists) {
-                logWarn("Removing invalid source biome: " + entry.getKey());
-                return true;
-            }
-
-            // Filter invalid target biomes
-            entry.getValue().removeIf(replacement -> {
-                boolean targetExists = biomeRegistry.containsKey(replacement.targetBiome.location());
-                if (!targetExists) {
-                    logWarn("Removing invalid target biome: " + replacement.targetBiome);
-                    return true;
-                }
-                return false;
-            });
-
-            return entry.getValue().isEmpty();
-        });
-
-        // Verify tag rules
-        tagRules.entrySet().removeIf(entry -> {
-            // Filter invalid target biomes
-            entry.getValue().removeIf(replacement -> {
-                boolean targetExists = biomeRegistry.containsKey(replacement.targetBiome.location());
-                if (!targetExists) {
-                    logWarn("Removing invalid target biome: " + replacement.targetBiome);
-                    return true;
-                }
-                return false;
-            });
-
-            return entry.getValue().isEmpty();
-        });
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (server != null) {
+            updateTagRules(server);
+        }
     }
 
-    private static ResourceKey<Biome> createBiomeKey(String biomeId) {
-        try {
-            // Use ResourceLocation.parse instead of constructor
-            ResourceLocation location = ResourceLocation.parse(biomeId);
-            return ResourceKey.create(Registries.BIOME, location);
-        } catch (Exception e) {
-            logWarn("Invalid biome ID: " + biomeId);
-            return null;
-        }
+    @SubscribeEvent
+    public void onRegisterCommands(RegisterCommandsEvent event) {
+        BiomeReplacerCommand.register(event.getDispatcher());
     }
 
-    public static Holder<Biome> replaceIfNeeded(Holder<Biome> original) {
-        if (biomeRegistry == null || original == null) {
-            return original;
+    @SubscribeEvent
+    public void onPlayerJoin(PlayerEvent.PlayerLoggedInEvent event) {
+        PublishedRules rules = published;
+        if (!rules.settings().muteChatInfo()) {
+            ReplacementTable table = rules.table();
+            String message = "Biome Replacer is active with " + table.directRuleCount() +
+                    " direct replacement rules and " + table.tagRuleCount() + " tag rules.";
+            event.getEntity().sendSystemMessage(Component.literal(message));
+            log("Sent startup message to player: " + event.getEntity().getName().getString());
         }
+    }
 
-        try {
-            ResourceKey<Biome> originalKey = original.unwrapKey().orElse(null);
-            if (originalKey == null) {
-                return original;
+    /**
+     * Re-reads and compiles the rules off-thread and builds the replaced parameter lists there
+     * too, then publishes all of it with a single volatile write. Worldgen keeps using the
+     * previous rules until then and never sees a partial reload or has to rebuild a list.
+     */
+    public static CompletableFuture<ReplacementTable> reloadRules(MinecraftServer server) {
+        Registry<Biome> registry = biomeRegistry;
+        long seed = worldSeed;
+        CompiledRuleCache cache = compiledRuleCache;
+        return CompletableFuture.supplyAsync(() -> {
+            if (registry == null) {
+                throw new IllegalStateException("Biome registry not initialized");
             }
 
-            // Use biome location to create a deterministic hash
-            String biomeId = originalKey.location().toString();
-            int biomeHash = biomeId.hashCode();
+            log("Reloading biome replacement rules...");
+            RulesReloadEvent event = new RulesReloadEvent();
+            event.begin();
+            try {
+                RuleCompiler compiler = new RuleCompiler(registry, seed);
+                ReplacementTable table = compiler.compile(cache);
+                publish(server, compiler.settings(), table);
+                ruleCompiler = compiler;
+                BiomeSourceRefresher.refresh(server);
+
+                event.directRules = table.directRuleCount();
+                event.tagRules = table.tagRuleCount();
+                event.succeeded = true;
+                return table;
+            } finally {
+                if (ReplacementMetrics.enabled()) {
+                    event.commit();
+                }
+            }
+        }, RELOAD_EXECUTOR).whenComplete((table, error) -> {
+            if (error != null) {
+                logError("Failed to reload biome replacement rules, keeping the previous ones", error);
+            }
+        });
+    }
 
-            // Check direct replacements first
-            List<ReplacementEntry> directReplacements = directRules.get(originalKey);
-            if (directReplacements != null && !directReplacements.isEmpty()) {
-                return handleSeedBasedReplacement(directReplacements, original, biomeHash);
+    /**
+     * Re-resolves tag rules against rebound tags on the reload executor, recompiling only the
+     * biomes whose tag rule changed, and publishes the result like a reload.
+     */
+    private static void updateTagRules(MinecraftServer server) {
+        CompletableFuture.runAsync(() -> {
+            RuleCompiler compiler = ruleCompiler;
+            if (compiler == null) {
+                return;
             }
 
-            // Check tag replacements
-            for (Map.Entry<TagKey<Biome>, List<ReplacementEntry>> entry : tagRules.entrySet()) {
-                if (original.is(entry.getKey())) {
-                    List<ReplacementEntry> tagReplacements = entry.getValue();
-                    if (!tagReplacements.isEmpty()) {
-                        return handleSeedBasedReplacement(tagReplacements, original, biomeHash);
-                    }
+            ReplacementTable previous = published.table();
+            ReplacementTable table = compiler.updateTags(previous);
+            if (table != previous) {
+                publish(server, compiler.settings(), table);
+                CompiledRuleCache cache = compiledRuleCache;
+                if (cache != null) {
+                    cache.invalidateTable();
                 }
+                BiomeSourceRefresher.refresh(server);
             }
+        }, RELOAD_EXECUTOR).whenComplete((ignored, error) -> {
+            if (error != null) {
+                logError("Failed to update tag rules after a tag reload", error);
+            }
+        });
+    }
 
-            return original;
-        } catch (Exception e) {
-            logError("Error during biome replacement", e);
-            return original;
+    // Builds the replaced lists of every dimension before anything can see the new table
+    private static void publish(MinecraftServer server, Config.Settings settings, ReplacementTable table) {
+        synchronized (PUBLISH_LOCK) {
+            published = new PublishedRules(settings, table, Map.of())
+                    .withParametersFor(BiomeSourceRefresher.originalParameters(server));
         }
     }
 
-    private static Holder<Biome> handleSeedBasedReplacement(List<ReplacementEntry> replacements, Holder<Biome> original, int biomeHash) {
-        // Create a new Random instance seeded with a combination of world seed and biome hash
-        // This ensures the same biome is consistently replaced the same way for a given world seed
-        long combinedSeed = worldSeed ^ biomeHash;
-        Random localRandom = new Random(combinedSeed);
-
-        // Roll for each replacement based on probability
-        for (ReplacementEntry entry : replacements) {
-            if (localRandom.nextDouble() <= entry.probability) {
-                // This replacement was selected
-                return getBiomeHolder(entry.targetBiome, original);
-            }
+    /**
+     * Replaced copy of {@code original} under the published rules. The lists of the server's
+     * dimensions are built before publishing; a biome source created later (e.g. by another mod)
+     * has its list built here once and added to the published rules, blocking only its caller.
+     */
+    public static ReplacedParameters replacedParameters(Climate.ParameterList<Holder<Biome>> original) {
+        ReplacedParameters replaced = published.parametersFor(original);
+        if (replaced != null) {
+            return replaced;
+        }
+        synchronized (PUBLISH_LOCK) {
+            published = published.withParametersFor(List.of(original));
+            return published.parametersFor(original);
         }
-
-        // If no replacement was selected, keep the original
-        return original;
     }
 
-    private static Holder<Biome> getBiomeHolder(ResourceKey<Biome> replacementKey, Holder<Biome> fallback) {
-        if (biomeRegistry == null) return fallback;
+    public static ReplacementTable replacementTable() {
+        return published.table();
+    }
 
-        return biomeRegistry.getHolder(replacementKey)
-                .map(holder -> (Holder<Biome>) holder)
-                .orElseGet(() -> {
-                    logWarn("Failed to get holder for replacement biome: " + replacementKey.location());
-                    return fallback;
-                });
+    public static Config.Settings settings() {
+        return published.settings();
     }
 
-    public static boolean noReplacements() {
-        return directRules.isEmpty() && tagRules.isEmpty();
+    /**
+     * Cache of the running server, or {@code null} when no server is running.
+     */
+    public static CompiledRuleCache compiledRuleCache() {
+        return compiledRuleCache;
     }
 
     public static void log(String message) {
@@ -332,4 +335,4 @@ public class BiomeReplacerNeoforge {
     public static void logError(String message, Throwable t) {
         LOGGER.error(LOG_PREFIX + message, t);
     }
-}
\ No newline at end of file
+}
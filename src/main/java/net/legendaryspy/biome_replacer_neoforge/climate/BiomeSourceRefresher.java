@@ -0,0 +1,78 @@
+package net.legendaryspy.biome_replacer_neoforge.climate;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableSet;
+import net.legendaryspy.biome_replacer_neoforge.mixin.BiomeSourceAccessor;
+import net.legendaryspy.biome_replacer_neoforge.mixin.ChunkGeneratorAccessor;
+import net.minecraft.core.Holder;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeGenerationSettings;
+import net.minecraft.world.level.biome.BiomeSource;
+import net.minecraft.world.level.biome.Climate;
+import net.minecraft.world.level.biome.FeatureSorter;
+import net.minecraft.world.level.chunk.ChunkGenerator;
+import net.minecraft.world.level.dimension.LevelStem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Brings the biome sources and chunk generators of a running server in line with newly
+ * published rules: replaced parameter lists, possible-biome sets and the per-step feature
+ * lists derived from them are all memoized at startup.
+ */
+public final class BiomeSourceRefresher {
+    private BiomeSourceRefresher() {
+    }
+
+    /**
+     * Original parameter lists of every replaceable biome source of the server's dimensions.
+     * Dimensions are registered before their levels are created, so this already covers every
+     * level while the server is still starting.
+     */
+    public static List<Climate.ParameterList<Holder<Biome>>> originalParameters(MinecraftServer server) {
+        List<Climate.ParameterList<Holder<Biome>>> originals = new ArrayList<>();
+        for (LevelStem stem : server.registryAccess().registryOrThrow(Registries.LEVEL_STEM)) {
+            if (stem.generator().getBiomeSource() instanceof ReplaceableBiomeSource replaceable) {
+                originals.add(replaceable.biome_replacer$originalParameters());
+            }
+        }
+        return originals;
+    }
+
+    public static void refresh(MinecraftServer server) {
+        Set<BiomeSource> refreshed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ServerLevel level : server.getAllLevels()) {
+            ChunkGenerator generator = level.getChunkSource().getGenerator();
+            BiomeSource source = generator.getBiomeSource();
+
+            if (refreshed.add(source)) {
+                if (source instanceof ReplaceableBiomeSource replaceable) {
+                    replaceable.biome_replacer$refresh();
+                }
+
+                // Keep the previous biomes too: chunks generated under the old rules
+                // may still be waiting for their features
+                BiomeSourceAccessor accessor = (BiomeSourceAccessor) source;
+                Set<Holder<Biome>> possibleBiomes = ImmutableSet.<Holder<Biome>>builder()
+                        .addAll(source.possibleBiomes())
+                        .addAll(accessor.biome_replacer$collectPossibleBiomes().iterator())
+                        .build();
+                accessor.biome_replacer$setPossibleBiomes(() -> possibleBiomes);
+            }
+
+            ChunkGeneratorAccessor generatorAccessor = (ChunkGeneratorAccessor) generator;
+            Function<Holder<Biome>, BiomeGenerationSettings> settingsGetter =
+                    generatorAccessor.biome_replacer$getGenerationSettingsGetter();
+            generatorAccessor.biome_replacer$setFeaturesPerStep(Suppliers.memoize(() -> FeatureSorter.buildFeaturesPerStep(
+                    List.copyOf(source.possibleBiomes()), biome -> settingsGetter.apply(biome).features(), true)));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package net.legendaryspy.biome_replacer_neoforge.climate;
+
+import com.mojang.datafixers.util.Pair;
+import net.legendaryspy.biome_replacer_neoforge.rules.PositionalRandom;
+import net.minecraft.world.level.biome.Climate;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parameter list with a bounded, lock-free, direct-mapped cache in front of the search tree.
+ * <p>
+ * Each slot holds an immutable entry, so worldgen threads can race on slot writes freely:
+ * a reader either sees a complete entry (final fields guarantee that) or an older one, and
+ * a miss just costs a normal tree search. With quantization enabled, the low bits of every
+ * climate value are ignored, so the first point sampled in a bucket answers for the whole
+ * bucket; that trades exactness for hit rate and is off by default.
+ */
+public class CachedParameterList<T> extends Climate.ParameterList<T> {
+    public static final int MAX_SIZE = 1 << 20; // Keeps the capacity from overflowing on absurd configs
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    private final Entry<T>[] entries;
+    private final int mask;
+    private final int quantizationBits;
+    private final PackedClimateTree<T> packed; // Searched on misses instead of the vanilla tree, if set
+
+    public CachedParameterList(List<Pair<Climate.ParameterPoint, T>> values, int size, int quantizationBits) {
+        this(values, size, quantizationBits, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    public CachedParameterList(List<Pair<Climate.ParameterPoint, T>> values, int size, int quantizationBits,
+                               boolean packedSearch) {
+        super(values);
+        this.packed = packedSearch ? new PackedClimateTree<>(values) : null;
+        int capacity = Integer.highestOneBit(Math.max(1, Math.min(size, MAX_SIZE) - 1)) << 1;
+        this.entries = new Entry[capacity];
+        this.mask = capacity - 1;
+        this.quantizationBits = quantizationBits;
+    }
+
+    @Override
+    public T findValue(Climate.TargetPoint target) {
+        int shift = quantizationBits;
+        long temperature = target.temperature() >> shift;
+        long humidity = target.humidity() >> shift;
+        long continentalness = target.continentalness() >> shift;
+        long erosion = target.erosion() >> shift;
+        long depth = target.depth() >> shift;
+        long weirdness = target.weirdness() >> shift;
+
+        long hash = temperature;
+        hash = hash * 31 + humidity;
+        hash = hash * 31 + continentalness;
+        hash = hash * 31 + erosion;
+        hash = hash * 31 + depth;
+        hash = hash * 31 + weirdness;
+        int index = (int) PositionalRandom.mix(hash) & mask;
+
+        Entry<T> entry = entries[index];
+        if (entry != null && entry.temperature == temperature && entry.humidity == humidity
+                && entry.continentalness == continentalness && entry.erosion == erosion
+                && entry.depth == depth && entry.weirdness == weirdness) {
+            HITS.increment();
+            return entry.value;
+        }
+
+        MISSES.increment();
+        T value = packed != null ? packed.find(target) : super.findValue(target);
+        entries[index] = new Entry<>(temperature, humidity, continentalness, erosion, depth, weirdness, value);
+        return value;
+    }
+
+    public static long hits() {
+        return HITS.sum();
+    }
+
+    public static long misses() {
+        return MISSES.sum();
+    }
+
+    public static void resetCounters() {
+        HITS.reset();
+        MISSES.reset();
+    }
+
+    private static final class Entry<T> {
+        final long temperature;
+        final long humidity;
+        final long continentalness;
+        final long erosion;
+        final long depth;
+        final long weirdness;
+        final T value;
+
+        Entry(long temperature, long humidity, long continentalness, long erosion, long depth, long weirdness, T value) {
+            this.temperature = temperature;
+            this.humidity = humidity;
+            this.continentalness = continentalness;
+            this.erosion = erosion;
+            this.depth = depth;
+            this.weirdness = weirdness;
+            this.value = value;
+        }
+    }
+}
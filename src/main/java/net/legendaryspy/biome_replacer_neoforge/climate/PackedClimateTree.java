@@ -0,0 +1,225 @@
+package net.legendaryspy.biome_replacer_neoforge.climate;
+
+import com.mojang.datafixers.util.Pair;
+import net.minecraft.world.level.biome.Climate;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Nearest-box search over climate parameter points, stored in flat primitive arrays.
+ * <p>
+ * The vanilla {@code Climate.RTree} keeps a {@code ParameterPoint} with seven boxed
+ * {@code Parameter}s per leaf and follows object references on every step. Here the bounds of
+ * every node are packed into one {@code long[]}, fourteen values per node, and leaf values sit
+ * in a parallel array, so a lookup touches a few contiguous cache lines. Leaves are ordered by
+ * recursively splitting on the axis with the widest spread, then packed bottom-up into nodes
+ * of {@value #CHILDREN_PER_NODE} consecutive children.
+ * <p>
+ * The search is the same branch and bound as vanilla's: it returns an entry with the smallest
+ * squared distance to the target, offset included, and skips subtrees that can't beat the best
+ * one so far. Only exact distance ties between different values may resolve differently, which
+ * vanilla already leaves to search order.
+ */
+public final class PackedClimateTree<T> {
+    private static final int AXES = 7; // The six climate parameters, then the offset
+    private static final int STRIDE = AXES * 2; // min, max per axis
+    private static final int CHILDREN_PER_NODE = 8;
+
+    private final long[] bounds;
+    private final int[] firstChild; // -1 for leaves
+    private final int[] childCount;
+    private final Object[] values; // By leaf index; leaves are nodes 0 to values.length - 1
+    private final int root;
+
+    // Last result per thread, used as the starting bound like vanilla's lastResult. Kept per
+    // thread so worldgen threads don't share a cache line or each other's positions
+    private final ThreadLocal<int[]> lastLeaf = ThreadLocal.withInitial(() -> new int[1]);
+
+    public PackedClimateTree(List<Pair<Climate.ParameterPoint, T>> points) {
+        if (points.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one parameter point");
+        }
+
+        int leafCount = points.size();
+        long[][] leafBounds = new long[leafCount][];
+        for (int i = 0; i < leafCount; i++) {
+            leafBounds[i] = boundsOf(points.get(i).getFirst());
+        }
+        Integer[] order = new Integer[leafCount];
+        Arrays.setAll(order, i -> i);
+        sortSpatially(order, 0, leafCount, leafBounds);
+
+        int nodeCount = leafCount;
+        for (int level = leafCount; level > 1; level = ceilDiv(level, CHILDREN_PER_NODE)) {
+            nodeCount += ceilDiv(level, CHILDREN_PER_NODE);
+        }
+
+        this.bounds = new long[nodeCount * STRIDE];
+        this.firstChild = new int[nodeCount];
+        this.childCount = new int[nodeCount];
+        this.values = new Object[leafCount];
+
+        for (int i = 0; i < leafCount; i++) {
+            System.arraycopy(leafBounds[order[i]], 0, bounds, i * STRIDE, STRIDE);
+            firstChild[i] = -1;
+            values[i] = points.get(order[i]).getSecond();
+        }
+
+        // Each level's nodes enclose consecutive runs of the level below
+        int levelStart = 0;
+        int levelSize = leafCount;
+        int next = leafCount;
+        while (levelSize > 1) {
+            int parentsStart = next;
+            for (int child = levelStart; child < levelStart + levelSize; child += CHILDREN_PER_NODE) {
+                int count = Math.min(CHILDREN_PER_NODE, levelStart + levelSize - child);
+                firstChild[next] = child;
+                childCount[next] = count;
+                enclose(next, child, count);
+                next++;
+            }
+            levelStart = parentsStart;
+            levelSize = next - parentsStart;
+        }
+        this.root = next - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T find(Climate.TargetPoint target) {
+        long temperature = target.temperature();
+        long humidity = target.humidity();
+        long continentalness = target.continentalness();
+        long erosion = target.erosion();
+        long depth = target.depth();
+        long weirdness = target.weirdness();
+
+        int[] last = lastLeaf.get();
+        int start = last[0];
+        int leaf;
+        if (root == 0) {
+            leaf = 0;
+        } else {
+            long startDistance = distance(start, temperature, humidity, continentalness, erosion, depth, weirdness);
+            // Inside the last result's box nothing can be strictly closer, so the search would
+            // return it anyway. Neighbouring samples usually land here
+            leaf = startDistance == 0 ? start
+                    : search(root, temperature, humidity, continentalness, erosion, depth, weirdness, start, startDistance);
+        }
+        last[0] = leaf;
+        return (T) values[leaf];
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    private int search(int node, long temperature, long humidity, long continentalness, long erosion, long depth,
+                       long weirdness, int best, long bestDistance) {
+        int end = firstChild[node] + childCount[node];
+        for (int child = firstChild[node]; child < end; child++) {
+            long distance = distance(child, temperature, humidity, continentalness, erosion, depth, weirdness);
+            if (distance < bestDistance) {
+                if (firstChild[child] < 0) {
+                    best = child;
+                    bestDistance = distance;
+                } else {
+                    int found = search(child, temperature, humidity, continentalness, erosion, depth, weirdness,
+                            best, bestDistance);
+                    if (found != best) {
+                        best = found;
+                        bestDistance = distance(found, temperature, humidity, continentalness, erosion, depth, weirdness);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private long distance(int node, long temperature, long humidity, long continentalness, long erosion, long depth,
+                          long weirdness) {
+        int base = node * STRIDE;
+        return axisDistance(temperature, base)
+                + axisDistance(humidity, base + 2)
+                + axisDistance(continentalness, base + 4)
+                + axisDistance(erosion, base + 6)
+                + axisDistance(depth, base + 8)
+                + axisDistance(weirdness, base + 10)
+                + axisDistance(0L, base + 12); // Targets have no offset
+    }
+
+    // Squared distance to [min, max] on one axis, as Climate.Parameter.distance
+    private long axisDistance(long value, int index) {
+        long above = value - bounds[index + 1];
+        long below = bounds[index] - value;
+        long distance = above > 0 ? above : Math.max(below, 0);
+        return distance * distance;
+    }
+
+    private void enclose(int node, int firstChild, int count) {
+        int base = node * STRIDE;
+        System.arraycopy(bounds, firstChild * STRIDE, bounds, base, STRIDE);
+        for (int child = firstChild + 1; child < firstChild + count; child++) {
+            int childBase = child * STRIDE;
+            for (int axis = 0; axis < AXES; axis++) {
+                bounds[base + axis * 2] = Math.min(bounds[base + axis * 2], bounds[childBase + axis * 2]);
+                bounds[base + axis * 2 + 1] = Math.max(bounds[base + axis * 2 + 1], bounds[childBase + axis * 2 + 1]);
+            }
+        }
+    }
+
+    private static long[] boundsOf(Climate.ParameterPoint point) {
+        List<Climate.Parameter> space = point.parameterSpace();
+        long[] result = new long[STRIDE];
+        for (int axis = 0; axis < AXES; axis++) {
+            result[axis * 2] = space.get(axis).min();
+            result[axis * 2 + 1] = space.get(axis).max();
+        }
+        return result;
+    }
+
+    /**
+     * Orders {@code order[from, to)} so that runs of consecutive leaves are close together:
+     * sorts by box center on the axis where the centers spread the most, then recurses into
+     * both halves.
+     */
+    private static void sortSpatially(Integer[] order, int from, int to, long[][] leafBounds) {
+        if (to - from <= CHILDREN_PER_NODE) {
+            return;
+        }
+
+        int widestAxis = 0;
+        long widestSpread = -1;
+        for (int axis = 0; axis < AXES; axis++) {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int i = from; i < to; i++) {
+                long center = center(leafBounds[order[i]], axis);
+                min = Math.min(min, center);
+                max = Math.max(max, center);
+            }
+            if (max - min > widestSpread) {
+                widestSpread = max - min;
+                widestAxis = axis;
+            }
+        }
+
+        int axis = widestAxis;
+        Arrays.sort(order, from, to, Comparator.comparingLong(leaf -> center(leafBounds[leaf], axis)));
+
+        // Split on a multiple of the node size so subtrees line up with the packed levels
+        int half = (to - from) / 2;
+        int middle = from + Math.max(CHILDREN_PER_NODE, half - half % CHILDREN_PER_NODE);
+        sortSpatially(order, from, middle, leafBounds);
+        sortSpatially(order, middle, to, leafBounds);
+    }
+
+    private static long center(long[] leafBounds, int axis) {
+        return (leafBounds[axis * 2] >> 1) + (leafBounds[axis * 2 + 1] >> 1);
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
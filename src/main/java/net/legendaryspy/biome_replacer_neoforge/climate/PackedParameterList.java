@@ -0,0 +1,25 @@
+package net.legendaryspy.biome_replacer_neoforge.climate;
+
+import com.mojang.datafixers.util.Pair;
+import net.minecraft.world.level.biome.Climate;
+
+import java.util.List;
+
+/**
+ * Parameter list that answers {@link #findValue} from a {@link PackedClimateTree} instead of
+ * the vanilla search tree. The vanilla tree is still built by the super constructor and
+ * serves the other search methods.
+ */
+public class PackedParameterList<T> extends Climate.ParameterList<T> {
+    private final PackedClimateTree<T> tree;
+
+    public PackedParameterList(List<Pair<Climate.ParameterPoint, T>> values) {
+        super(values);
+        this.tree = new PackedClimateTree<>(values);
+    }
+
+    @Override
+    public T findValue(Climate.TargetPoint target) {
+        return tree.find(target);
+    }
+}
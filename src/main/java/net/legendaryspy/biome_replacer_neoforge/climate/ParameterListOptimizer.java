@@ -0,0 +1,235 @@
+package net.legendaryspy.biome_replacer_neoforge.climate;
+
+import com.mojang.datafixers.util.Pair;
+import net.minecraft.world.level.biome.Climate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Shrinks a climate parameter list before its search tree is built by removing and merging
+ * hyper-rectangles that resolve to the same value.
+ * <p>
+ * Lookups pick the entry with the smallest distance to the target point, so an entry can be
+ * dropped when another one with the same value encloses it with an offset no larger than its
+ * own, and two entries with the same value and offset can be merged when they only differ on
+ * one axis and their intervals touch or overlap: the distance to the union is the minimum of
+ * the two distances. Either way every lookup still resolves to the same value, except for exact
+ * distance ties between different values, which vanilla already breaks by search order.
+ */
+public final class ParameterListOptimizer {
+    private static final int AXES = 6;
+    // Mirrors Climate.RTree.CHILDREN_PER_NODE, used to estimate the built tree's shape
+    private static final int RTREE_CHILDREN_PER_NODE = 6;
+
+    private ParameterListOptimizer() {
+    }
+
+    public static <T> List<Pair<Climate.ParameterPoint, T>> optimize(List<Pair<Climate.ParameterPoint, T>> values) {
+        List<Box<T>> boxes = new ArrayList<>(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            boxes.add(Box.of(values.get(i), i));
+        }
+
+        boxes = pruneEnclosed(boxes);
+        boxes = mergeAdjacent(boxes);
+
+        // Keep the original relative order so tree construction stays deterministic
+        boxes.sort(Comparator.comparingInt(box -> box.order));
+        List<Pair<Climate.ParameterPoint, T>> result = new ArrayList<>(boxes.size());
+        for (Box<T> box : boxes) {
+            result.add(box.toPair());
+        }
+        return result;
+    }
+
+    /**
+     * Describes the change in leaf count, estimated node count and depth of the search tree.
+     */
+    public static String describeReduction(int before, int after) {
+        return before + " -> " + after + " points, ~" + estimateNodes(before) + " -> ~" + estimateNodes(after)
+                + " tree nodes, depth " + estimateDepth(before) + " -> " + estimateDepth(after);
+    }
+
+    private static int estimateNodes(int leaves) {
+        int total = leaves;
+        for (int level = leaves; level > 1; ) {
+            level = (level + RTREE_CHILDREN_PER_NODE - 1) / RTREE_CHILDREN_PER_NODE;
+            total += level;
+        }
+        return total;
+    }
+
+    private static int estimateDepth(int leaves) {
+        int depth = 1;
+        for (int level = leaves; level > 1; depth++) {
+            level = (level + RTREE_CHILDREN_PER_NODE - 1) / RTREE_CHILDREN_PER_NODE;
+        }
+        return depth;
+    }
+
+    private static <T> List<Box<T>> pruneEnclosed(List<Box<T>> boxes) {
+        Map<T, List<Box<T>>> byValue = new LinkedHashMap<>();
+        for (Box<T> box : boxes) {
+            byValue.computeIfAbsent(box.value, k -> new ArrayList<>()).add(box);
+        }
+
+        List<Box<T>> kept = new ArrayList<>(boxes.size());
+        for (List<Box<T>> group : byValue.values()) {
+            boolean[] removed = new boolean[group.size()];
+            for (int i = 0; i < group.size(); i++) {
+                Box<T> inner = group.get(i);
+                for (int j = 0; j < group.size(); j++) {
+                    if (i != j && !removed[j] && group.get(j).encloses(inner)) {
+                        removed[i] = true;
+                        break;
+                    }
+                }
+                if (!removed[i]) {
+                    kept.add(inner);
+                }
+            }
+        }
+        return kept;
+    }
+
+    private static <T> List<Box<T>> mergeAdjacent(List<Box<T>> boxes) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int axis = 0; axis < AXES; axis++) {
+                Map<MergeKey, List<Box<T>>> groups = new HashMap<>();
+                for (Box<T> box : boxes) {
+                    groups.computeIfAbsent(new MergeKey(box, axis), k -> new ArrayList<>()).add(box);
+                }
+
+                List<Box<T>> merged = new ArrayList<>(boxes.size());
+                for (List<Box<T>> group : groups.values()) {
+                    if (group.size() == 1) {
+                        merged.add(group.get(0));
+                        continue;
+                    }
+
+                    final int sortAxis = axis;
+                    group.sort(Comparator.comparingLong(box -> box.min[sortAxis]));
+                    Box<T> current = group.get(0);
+                    for (int i = 1; i < group.size(); i++) {
+                        Box<T> next = group.get(i);
+                        if (next.min[axis] <= current.max[axis]) {
+                            current = current.extend(axis, next);
+                            changed = true;
+                        } else {
+                            merged.add(current);
+                            current = next;
+                        }
+                    }
+                    merged.add(current);
+                }
+                boxes = merged;
+            }
+        }
+        return boxes;
+    }
+
+    private static final class Box<T> {
+        final long[] min;
+        final long[] max;
+        final long offset;
+        final T value;
+        final int order;
+
+        Box(long[] min, long[] max, long offset, T value, int order) {
+            this.min = min;
+            this.max = max;
+            this.offset = offset;
+            this.value = value;
+            this.order = order;
+        }
+
+        static <T> Box<T> of(Pair<Climate.ParameterPoint, T> entry, int order) {
+            Climate.ParameterPoint point = entry.getFirst();
+            Climate.Parameter[] parameters = {
+                    point.temperature(), point.humidity(), point.continentalness(),
+                    point.erosion(), point.depth(), point.weirdness()
+            };
+            long[] min = new long[AXES];
+            long[] max = new long[AXES];
+            for (int axis = 0; axis < AXES; axis++) {
+                min[axis] = parameters[axis].min();
+                max[axis] = parameters[axis].max();
+            }
+            return new Box<>(min, max, point.offset(), entry.getSecond(), order);
+        }
+
+        boolean encloses(Box<T> other) {
+            if (offset > other.offset) {
+                return false;
+            }
+            for (int axis = 0; axis < AXES; axis++) {
+                if (min[axis] > other.min[axis] || max[axis] < other.max[axis]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Box<T> extend(int axis, Box<T> other) {
+            long[] newMax = max.clone();
+            newMax[axis] = Math.max(max[axis], other.max[axis]);
+            return new Box<>(min, newMax, offset, value, Math.min(order, other.order));
+        }
+
+        Pair<Climate.ParameterPoint, T> toPair() {
+            return Pair.of(new Climate.ParameterPoint(
+                    new Climate.Parameter(min[0], max[0]),
+                    new Climate.Parameter(min[1], max[1]),
+                    new Climate.Parameter(min[2], max[2]),
+                    new Climate.Parameter(min[3], max[3]),
+                    new Climate.Parameter(min[4], max[4]),
+                    new Climate.Parameter(min[5], max[5]),
+                    offset), value);
+        }
+    }
+
+    /**
+     * Groups boxes that may merge along one axis: same value, same offset, same bounds elsewhere.
+     */
+    private static final class MergeKey {
+        private final Object value;
+        private final long offset;
+        private final long[] bounds;
+        private final int hash;
+
+        MergeKey(Box<?> box, int axis) {
+            this.value = box.value;
+            this.offset = box.offset;
+            this.bounds = new long[(AXES - 1) * 2];
+            int i = 0;
+            for (int other = 0; other < AXES; other++) {
+                if (other != axis) {
+                    bounds[i++] = box.min[other];
+                    bounds[i++] = box.max[other];
+                }
+            }
+            this.hash = Objects.hash(value, offset, Arrays.hashCode(bounds));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MergeKey other)) return false;
+            return offset == other.offset && Objects.equals(value, other.value) && Arrays.equals(bounds, other.bounds);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package net.legendaryspy.biome_replacer_neoforge.climate;
+
+import com.mojang.datafixers.util.Pair;
+import net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge;
+import net.legendaryspy.biome_replacer_neoforge.config.Config;
+import net.legendaryspy.biome_replacer_neoforge.metrics.ParameterListRebuildEvent;
+import net.legendaryspy.biome_replacer_neoforge.metrics.ReplacementMetrics;
+import net.legendaryspy.biome_replacer_neoforge.rules.ClimateRule;
+import net.legendaryspy.biome_replacer_neoforge.rules.CompiledRuleCache;
+import net.legendaryspy.biome_replacer_neoforge.rules.ReplacementTable;
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.Climate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the replaced copy of a biome source's climate parameter list.
+ */
+public final class ParameterListRebuilder {
+    /**
+     * A replaced list along with its point counts: before replacement, after splitting by
+     * climate rules, and after optimization.
+     */
+    public record Result(Climate.ParameterList<Holder<Biome>> parameters, int originalPoints, int splitPoints,
+                         int finalPoints) {
+    }
+
+    private ParameterListRebuilder() {
+    }
+
+    /**
+     * Builds the replaced list and logs what the rules did to it.
+     */
+    public static Climate.ParameterList<Holder<Biome>> rebuild(Climate.ParameterList<Holder<Biome>> parameterList,
+                                                               ReplacementTable table, Config.Settings settings) {
+        if (table.isEmpty()) {
+            BiomeReplacerNeoforge.log("No rules found, skipping replacements");
+            return parameterList;
+        }
+
+        Result result = build(parameterList, table, settings);
+        if (!table.climateRules().isEmpty()) {
+            BiomeReplacerNeoforge.log("Applied climate rules: " + result.originalPoints() + " parameter points became " +
+                    result.splitPoints());
+        }
+        if (settings.optimizeParameters()) {
+            BiomeReplacerNeoforge.log("Optimized parameter list: " +
+                    ParameterListOptimizer.describeReduction(result.splitPoints(), result.finalPoints()));
+        }
+        BiomeReplacerNeoforge.log("Successfully applied biome replacements after all other mods");
+        return result.parameters();
+    }
+
+    /**
+     * Builds the replaced list without logging anything, so benchmarks time only the rebuild.
+     * {@code settings} should be the ones {@code table} was compiled from.
+     */
+    public static Result build(Climate.ParameterList<Holder<Biome>> parameterList, ReplacementTable table,
+                               Config.Settings settings) {
+        int originalPoints = parameterList.values().size();
+        if (table.isEmpty()) {
+            return new Result(parameterList, originalPoints, originalPoints, originalPoints);
+        }
+
+        boolean metrics = settings.metrics();
+        long start = metrics ? System.nanoTime() : 0L;
+        ParameterListRebuildEvent event = metrics ? new ParameterListRebuildEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+
+        // Replace biomes in the parameter list based on the replacement rules
+        List<Pair<Climate.ParameterPoint, Holder<Biome>>> updatedParameterList;
+        if (table.climateRules().isEmpty()) {
+            updatedParameterList = parameterList.values().stream()
+                    .map(entry -> new Pair<>(entry.getFirst(), table.applyToPoint(entry.getSecond())))
+                    .collect(Collectors.toList());
+        } else {
+            updatedParameterList = new ArrayList<>(parameterList.values().size());
+            for (Pair<Climate.ParameterPoint, Holder<Biome>> entry : parameterList.values()) {
+                applyClimateRules(entry.getFirst(), entry.getSecond(), table, updatedParameterList);
+            }
+        }
+
+        int splitPoints = updatedParameterList.size();
+        if (settings.optimizeParameters()) {
+            CompiledRuleCache cache = BiomeReplacerNeoforge.compiledRuleCache();
+            updatedParameterList = cache != null && settings.persistCache()
+                    ? cache.optimized(updatedParameterList, ParameterListOptimizer::optimize)
+                    : ParameterListOptimizer.optimize(updatedParameterList);
+        }
+
+        Climate.ParameterList<Holder<Biome>> replaced;
+        if (settings.climateCacheSize() > 0) {
+            replaced = new CachedParameterList<>(updatedParameterList, settings.climateCacheSize(),
+                    settings.climateCacheQuantization(), settings.packedClimateSearch());
+        } else if (settings.packedClimateSearch()) {
+            replaced = new PackedParameterList<>(updatedParameterList);
+        } else {
+            replaced = new Climate.ParameterList<>(updatedParameterList);
+        }
+
+        if (metrics) {
+            ReplacementMetrics.recordRebuild(System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.pointsBefore = originalPoints;
+                event.pointsAfter = updatedParameterList.size();
+                event.commit();
+            }
+        }
+        return new Result(replaced, originalPoints, splitPoints, updatedParameterList.size());
+    }
+
+    /**
+     * Splits a point along the boxes of the climate rules that apply to its biome. Parts inside
+     * a box get that rule's target; whatever no rule claims goes through the regular rules.
+     */
+    private static void applyClimateRules(Climate.ParameterPoint point, Holder<Biome> biome, ReplacementTable table,
+                                          List<Pair<Climate.ParameterPoint, Holder<Biome>>> result) {
+        List<Climate.ParameterPoint> remaining = List.of(point);
+        for (ClimateRule rule : table.climateRules()) {
+            if (remaining.isEmpty()) {
+                return;
+            }
+            if (!rule.appliesTo(biome)) {
+                continue;
+            }
+
+            List<Climate.ParameterPoint> outside = new ArrayList<>();
+            for (Climate.ParameterPoint part : remaining) {
+                Climate.ParameterPoint inside = rule.clip(part, outside);
+                if (inside != null) {
+                    result.add(new Pair<>(inside, rule.target() != null ? rule.target() : biome));
+                }
+            }
+            remaining = outside;
+        }
+
+        if (!remaining.isEmpty()) {
+            Holder<Biome> replaced = table.applyToPoint(biome);
+            for (Climate.ParameterPoint part : remaining) {
+                result.add(new Pair<>(part, replaced));
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package net.legendaryspy.biome_replacer_neoforge.climate;
+
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.Climate;
+
+/**
+ * Implemented by biome sources whose replaced climate parameters are cached per instance.
+ */
+public interface ReplaceableBiomeSource {
+
+    /**
+     * Switches to the replaced parameter list of the currently published rules.
+     */
+    void biome_replacer$refresh();
+
+    /**
+     * The parameter list as it was before any rules were applied.
+     */
+    Climate.ParameterList<Holder<Biome>> biome_replacer$originalParameters();
+
+    /**
+     * The parameter list with the currently published rules applied.
+     */
+    Climate.ParameterList<Holder<Biome>> biome_replacer$replacedParameters();
+
+    /**
+     * The replaced parameter list together with the table it was built from.
+     */
+    ReplacedParameters biome_replacer$replaced();
+}
@@ -0,0 +1,13 @@
+package net.legendaryspy.biome_replacer_neoforge.climate;
+
+import net.legendaryspy.biome_replacer_neoforge.rules.ReplacementTable;
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.Climate;
+
+/**
+ * A replaced parameter list together with the table it was built from, published as one
+ * object so readers can never pair a list with the wrong rules.
+ */
+public record ReplacedParameters(ReplacementTable table, Climate.ParameterList<Holder<Biome>> parameters) {
+}
@@ -0,0 +1,113 @@
+package net.legendaryspy.biome_replacer_neoforge.command;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge;
+import net.legendaryspy.biome_replacer_neoforge.climate.CachedParameterList;
+import net.legendaryspy.biome_replacer_neoforge.metrics.ReplacementMetrics;
+import net.legendaryspy.biome_replacer_neoforge.metrics.RuleMetrics;
+import net.legendaryspy.biome_replacer_neoforge.preview.BiomePreview;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+import net.minecraft.world.phys.Vec3;
+
+import java.util.List;
+
+public final class BiomeReplacerCommand {
+    private static final int MAX_LISTED_RULES = 20;
+    private static final int DEFAULT_PREVIEW_SIZE = 4096;
+    private static final int MAX_PREVIEW_SIZE = 100_000;
+
+    private BiomeReplacerCommand() {
+    }
+
+    public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+        dispatcher.register(Commands.literal("biomereplacer")
+                .requires(source -> source.hasPermission(Commands.LEVEL_GAMEMASTERS))
+                .then(Commands.literal("reload").executes(context -> reload(context.getSource())))
+                .then(Commands.literal("stats").executes(context -> stats(context.getSource())))
+                .then(Commands.literal("preview")
+                        .executes(context -> preview(context.getSource(), DEFAULT_PREVIEW_SIZE, null, 0))
+                        .then(Commands.argument("size", IntegerArgumentType.integer(16, MAX_PREVIEW_SIZE))
+                                .executes(context -> preview(context.getSource(),
+                                        IntegerArgumentType.getInteger(context, "size"), null, 0))
+                                .then(Commands.argument("y", IntegerArgumentType.integer())
+                                        .executes(context -> preview(context.getSource(),
+                                                IntegerArgumentType.getInteger(context, "size"),
+                                                IntegerArgumentType.getInteger(context, "y"), 0))
+                                        .then(Commands.argument("step", IntegerArgumentType.integer(4, 1024))
+                                                .executes(context -> preview(context.getSource(),
+                                                        IntegerArgumentType.getInteger(context, "size"),
+                                                        IntegerArgumentType.getInteger(context, "y"),
+                                                        IntegerArgumentType.getInteger(context, "step"))))))));
+    }
+
+    private static int reload(CommandSourceStack source) {
+        source.sendSuccess(() -> Component.literal("Reloading biome replacement rules..."), true);
+        BiomeReplacerNeoforge.reloadRules(source.getServer()).whenComplete((table, error) ->
+                source.getServer().execute(() -> {
+                    if (error != null) {
+                        source.sendFailure(Component.literal("Failed to reload biome replacement rules, see the server log"));
+                    } else {
+                        source.sendSuccess(() -> Component.literal("Reloaded " + table.directRuleCount() +
+                                " direct replacement rules and " + table.tagRuleCount() + " tag rules"), true);
+                    }
+                }));
+        return 1;
+    }
+
+    private static int stats(CommandSourceStack source) {
+        RuleMetrics metrics = BiomeReplacerNeoforge.replacementTable().metrics();
+        if (metrics == null) {
+            source.sendFailure(Component.literal("Metrics are disabled, set metrics = true in the config and reload"));
+            return 0;
+        }
+
+        List<RuleMetrics.RuleStats> stats = metrics.snapshot();
+        send(source, "Rules compiled in " + ReplacementMetrics.lastCompileNanos() / 1_000_000 + " ms, " +
+                ReplacementMetrics.rebuilds() + " parameter list rebuilds in " +
+                ReplacementMetrics.rebuildNanos() / 1_000_000 + " ms");
+        send(source, "Climate cache: " + CachedParameterList.hits() + " hits, " + CachedParameterList.misses() + " misses");
+        // Fixed rules of multi-noise sources are applied per parameter point, not per sample
+        send(source, "Rules (" + stats.size() + "), sampled / replaced and parameter points / replaced:");
+        for (RuleMetrics.RuleStats rule : stats.subList(0, Math.min(MAX_LISTED_RULES, stats.size()))) {
+            send(source, "  " + rule.rule() + ": samples " + rule.samples() + " / " + rule.sampleHits() +
+                    ", points " + rule.points() + " / " + rule.pointHits());
+        }
+        if (stats.size() > MAX_LISTED_RULES) {
+            send(source, "  ... and " + (stats.size() - MAX_LISTED_RULES) + " more");
+        }
+        return stats.size();
+    }
+
+    private static int preview(CommandSourceStack source, int size, Integer y, int step) {
+        Vec3 position = source.getPosition();
+        int centerX = (int) Math.floor(position.x);
+        int centerZ = (int) Math.floor(position.z);
+        int sampleY = y != null ? y : (int) Math.floor(position.y);
+        BiomePreview.Area area = step > 0
+                ? new BiomePreview.Area(centerX, centerZ, size, sampleY, step)
+                : BiomePreview.Area.of(centerX, centerZ, size, sampleY);
+
+        // The step may have been raised to keep the image size bounded, so report what is covered
+        source.sendSuccess(() -> Component.literal("Rendering biome preview of " + area.coveredSize() + " blocks around " +
+                centerX + ", " + centerZ + " at y " + sampleY + ", " + area.step() + " blocks per pixel..."), true);
+        BiomePreview.renderAsync(source.getLevel(), area).whenComplete((result, error) ->
+                source.getServer().execute(() -> {
+                    if (error != null) {
+                        BiomeReplacerNeoforge.logError("Failed to render biome preview", error);
+                        Throwable cause = error.getCause() != null ? error.getCause() : error;
+                        source.sendFailure(Component.literal("Failed to render biome preview: " + cause.getMessage()));
+                    } else {
+                        BiomeReplacerNeoforge.log(result.describe());
+                        source.sendSuccess(() -> Component.literal(result.describe()), true);
+                    }
+                }));
+        return 1;
+    }
+
+    private static void send(CommandSourceStack source, String message) {
+        source.sendSuccess(() -> Component.literal(message), false);
+    }
+}
@@ -1,55 +1,179 @@
 package net.legendaryspy.biome_replacer_neoforge.config;
 
+import net.legendaryspy.biome_replacer_neoforge.climate.CachedParameterList;
 import net.neoforged.fml.loading.FMLPaths;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public class Config {
 
     // Config file name and location
     private static final String FILE_NAME = "biome_replacer_neoforge.properties";
-    private static final Path FILE_PATH = FMLPaths.CONFIGDIR.get().resolve(FILE_NAME);
 
-    // Biome replacement rules
-    public static Map<String, BiomeReplacement> rules = new HashMap<>(); // Direct biome replacements
-    public static Map<String, List<BiomeReplacement>> tagRules = new HashMap<>(); // Tag-based biome replacements
-    public static boolean muteChatInfo = false; // Option to mute chat notifications
+    /**
+     * Everything read from the config files. Immutable: a reload parses a new instance and
+     * publishes it together with the rules compiled from it, so worldgen threads never see
+     * options of one reload mixed with defaults or rules of another.
+     */
+    public record Settings(Map<String, BiomeReplacement> rules, Map<String, List<BiomeReplacement>> tagRules,
+                           List<ClimateRule> climateRules, boolean muteChatInfo, boolean regionChance, int regionSize,
+                           boolean optimizeParameters, int climateCacheSize, int climateCacheQuantization,
+                           boolean packedClimateSearch, boolean watchConfig, boolean metrics,
+                           boolean persistCache) {
+        public static final Settings DEFAULTS = new Builder().build();
+
+        public Settings {
+            rules = Collections.unmodifiableMap(new LinkedHashMap<>(rules));
+            Map<String, List<BiomeReplacement>> tagRulesCopy = new LinkedHashMap<>();
+            tagRules.forEach((tag, replacements) -> tagRulesCopy.put(tag, List.copyOf(replacements)));
+            tagRules = Collections.unmodifiableMap(tagRulesCopy);
+            climateRules = List.copyOf(climateRules);
+        }
+    }
+
+    /**
+     * Mutable settings while a config is being read, or while tests and benchmarks set up rules.
+     */
+    public static final class Builder {
+        public Map<String, BiomeReplacement> rules = new LinkedHashMap<>(); // Direct biome replacements
+        public Map<String, List<BiomeReplacement>> tagRules = new LinkedHashMap<>(); // Tag-based biome replacements
+        public List<ClimateRule> climateRules = new ArrayList<>(); // Replacements limited to part of the climate space
+        public boolean muteChatInfo = false; // Option to mute chat notifications
+        public boolean regionChance = false; // Decide chance rules per region instead of once per world
+        public int regionSize = 64; // Region edge length in blocks for regionChance
+        public boolean optimizeParameters = true; // Merge climate points that end up with the same biome
+        public int climateCacheSize = 0; // Entries in the climate lookup cache, 0 disables it
+        public int climateCacheQuantization = 0; // Low bits of each climate value ignored by the cache
+        public boolean packedClimateSearch = false; // Search replaced lists with the packed array tree
+        public boolean watchConfig = true; // Reload rules when this file changes
+        public boolean metrics = false; // Collect per-rule counters and timings
+        public boolean persistCache = true; // Keep compiled rules in the world folder between starts
+
+        public Settings build() {
+            return new Settings(rules, tagRules, climateRules, muteChatInfo, regionChance, regionSize, optimizeParameters,
+                    climateCacheSize, climateCacheQuantization, packedClimateSearch, watchConfig,
+                    metrics, persistCache);
+        }
+    }
 
     // Class to store replacement information along with probability
     public static class BiomeReplacement {
-        public final String targetBiome;
+        public final List<WeightedTarget> targets; // One of them is picked by weight once the rule applies
         public final double probability; // 0.0 to 1.0
 
         public BiomeReplacement(String targetBiome, double probability) {
-            this.targetBiome = targetBiome;
+            this(List.of(new WeightedTarget(targetBiome, 1.0)), probability);
+        }
+
+        public BiomeReplacement(List<WeightedTarget> targets, double probability) {
+            this.targets = List.copyOf(targets);
             this.probability = Math.max(0.0, Math.min(1.0, probability)); // Clamp between 0 and 1
         }
     }
 
+    // One entry of a weighted rule such as "plains > 3 desert, 1 keep"
+    public static class WeightedTarget {
+        public static final String KEEP = "keep";
+
+        public final String biome; // KEEP leaves the original biome in place
+        public final double weight;
+
+        public WeightedTarget(String biome, double weight) {
+            this.biome = biome;
+            this.weight = weight;
+        }
+
+        public boolean keeps() {
+            return biome.equals(KEEP);
+        }
+    }
+
+    // Rule that only applies where every condition holds, e.g. "plains > savanna where temperature > 0.3"
+    public static class ClimateRule {
+        public final String source; // Biome id, or tag with '#' prefix
+        public final BiomeReplacement replacement;
+        public final List<ClimateCondition> conditions;
+
+        public ClimateRule(String source, BiomeReplacement replacement, List<ClimateCondition> conditions) {
+            this.source = source;
+            this.replacement = replacement;
+            this.conditions = List.copyOf(conditions);
+        }
+    }
+
+    // Bound on one climate parameter axis, in the same units as the noise settings (-1.0 to 1.0 for most)
+    public static class ClimateCondition {
+        public static final List<String> AXES = List.of("temperature", "humidity", "continentalness", "erosion", "depth", "weirdness");
+
+        public final String axis;
+        public final boolean above; // true for "axis > value", false for "axis < value"
+        public final float value;
+
+        public ClimateCondition(String axis, boolean above, float value) {
+            this.axis = axis;
+            this.above = above;
+            this.value = value;
+        }
+    }
+
+    // Resolved on use so the parser can run outside a game launch (e.g. in benchmarks)
+    public static Path filePath() {
+        return FMLPaths.CONFIGDIR.get().resolve(FILE_NAME);
+    }
+
     /**
      * Creates a default config file if it doesn't exist.
      */
     public static void createIfAbsent() {
-        File file = FILE_PATH.toFile();
+        File file = filePath().toFile();
         if (file.exists()) return; // No need to create if it already exists
 
         try (PrintWriter writer = new PrintWriter(file)) {
             // Default settings and instructions for users
             writer.println("muteChatInfo = false");
             writer.println("! Mute chat info when a player joins (true/false, default: false)");
+            writer.println("chanceMode = world");
+            writer.println("! How chance rules are decided (world/region, default: world)");
+            writer.println("! world: each biome is either replaced everywhere or nowhere in a given world");
+            writer.println("! region: each region of the world rolls separately, so 0.3 replaces ~30% of patches");
+            writer.println("regionSize = 64");
+            writer.println("! Region edge length in blocks for chanceMode = region (rounded down to a power of two, min 4)");
+            writer.println("optimizeParameters = true");
+            writer.println("! Merge climate parameter points that map to the same biome after replacement (true/false, default: true)");
+            writer.println("climateCacheSize = 0");
+            writer.println("! Entries in the climate-to-biome lookup cache, rounded up to a power of two (0 disables, max 1048576, default: 0)");
+            writer.println("climateCacheQuantization = 0");
+            writer.println("! Low bits of each climate value the cache ignores; above 0 lookups become approximate (default: 0)");
+            writer.println("packedClimateSearch = false");
+            writer.println("! Search replaced climate parameter lists with a flat array tree instead of vanilla's (true/false, default: false)");
+            writer.println("watchConfig = true");
+            writer.println("! Reload rules automatically when this file is saved (true/false, default: true)");
+            writer.println("! Rules can also be reloaded with /biomereplacer reload");
+            writer.println("metrics = false");
+            writer.println("! Collect per-rule counters and timings for /biomereplacer stats (true/false, default: false)");
+            writer.println("persistCache = true");
+            writer.println("! Save compiled rules in the world folder so unchanged setups start faster (true/false, default: true)");
             writer.println("! ");
             writer.println("! Define biome replacement rules below:");
             writer.println("! Syntax: old_biome > new_biome [probability]");
             writer.println("! Probability is optional and defaults to 1.0 (100%)");
             writer.println("! For reference: 0.9 = 90%, 0.5 = 50%, 0.1 = 10%");
+            writer.println("! To pick one of several biomes, list them with weights: old_biome > 3 new_biome, 1 other_biome, 1 keep");
+            writer.println("! 'keep' leaves the old biome in place; weights are relative and don't need to add up to anything");
+            writer.println("! In world mode one target is picked for the whole world; in region mode each region picks its own");
             writer.println("! For full biome list, see https://minecraft.gamepedia.com/Biome/ID");
             writer.println("! ");
             writer.println("! Example rules (remove '!' to activate):");
@@ -57,83 +181,137 @@ public class Config {
             writer.println("! minecraft:taiga > minecraft:desert 0.1");
             writer.println("! minecraft:sunflower_plains > minecraft:forest 0.3");
             writer.println("! minecraft:plains > minecraft:badlands 0.2");
+            writer.println("! minecraft:savanna > 3 minecraft:desert, 1 minecraft:badlands, 1 keep");
             writer.println("! ");
             writer.println("! For biome tags, use '#' as prefix:");
             writer.println("! #minecraft:is_forest > minecraft:desert 0.5");
             writer.println("! #minecraft:is_mountain > minecraft:badlands 0.35");
+            writer.println("! ");
+            writer.println("! Rules can be limited to part of the climate space with 'where' and one or more conditions:");
+            writer.println("! minecraft:plains > minecraft:savanna where temperature > 0.3");
+            writer.println("! minecraft:dripstone_caves > minecraft:lush_caves where depth > 0.5 and humidity > 0.2");
+            writer.println("! Axes: temperature, humidity, continentalness, erosion, depth, weirdness (only for multi-noise dimensions)");
+            writer.println("! ");
+            writer.println("! More rules can be split into .properties files in the biome_replacer_neoforge.d folder;");
+            writer.println("! they are read after this file, in file name order.");
         } catch (IOException e) {
             throw new RuntimeException("Failed to create config file", e);
         }
     }
 
     /**
-     * Loads and processes the config file.
-     * Clears existing rules and reloads them from the file.
+     * Reads the config file, creating it first if it doesn't exist.
      */
-    public static void reload() {
+    public static Settings read() {
         createIfAbsent();
-        File file = FILE_PATH.toFile();
-
-        try (Scanner reader = new Scanner(file)) {
-            rules.clear();
-            tagRules.clear();
+        return parse(filePath());
+    }
 
-            while (reader.hasNextLine()) {
-                String line = reader.nextLine().trim();
+    /**
+     * Parses the given file and every {@code .properties} file in its rule directory
+     * ({@code <name>.d} next to it) into new settings; nothing global is changed.
+     * Files are parsed in parallel and merged in a fixed order: the main file first, then the
+     * directory's files by name. Later files override options and direct rules of earlier ones.
+     */
+    public static Settings parse(Path path) {
+        List<ConfigParser.ParsedFile> parsed = sourceFiles(path).parallelStream().map(ConfigParser::parse).toList();
 
-                // Skip comments (starting with '!') and empty lines
-                if (line.isEmpty() || line.startsWith("!")) continue;
+        Builder settings = new Builder();
+        Map<String, String> ruleLines = new HashMap<>(); // Where each direct rule was declared, for duplicate warnings
+        for (ConfigParser.ParsedFile file : parsed) {
+            for (ConfigParser.Option option : file.options()) {
+                applyOption(settings, file, option);
+            }
 
-                // Handle configuration options (e.g., muteChatInfo)
-                if (line.contains("=")) {
-                    String[] parts = line.split("=", 2);
-                    if (parts.length == 2) {
-                        String key = parts[0].trim();
-                        String value = parts[1].trim();
+            for (ConfigParser.Rule rule : file.rules()) {
+                BiomeReplacement replacement = new BiomeReplacement(rule.targets(), rule.probability());
 
-                        // Update muteChatInfo setting
-                        if (key.equals("muteChatInfo")) {
-                            muteChatInfo = Boolean.parseBoolean(value);
-                        }
-                    }
+                // Conditional rules are kept in declaration order and never override each other
+                if (!rule.conditions().isEmpty()) {
+                    settings.climateRules.add(new ClimateRule(rule.source(), replacement, rule.conditions()));
                     continue;
                 }
 
-                // Handle biome replacement rules (old_biome > new_biome [probability])
-                String[] result = line.split(">", 2);
-                if (result.length == 2) {
-                    String oldBiome = result[0].trim();
-                    String newBiomeWithProb = result[1].trim();
-
-                    // Split target biome and probability (if provided)
-                    String[] biomeAndProb = newBiomeWithProb.split("\\s+", 2);
-                    String newBiome = biomeAndProb[0].trim();
-                    double probability = 1.0; // Default to 100% replacement
-
-                    // Parse probability if provided
-                    if (biomeAndProb.length > 1) {
-                        try {
-                            probability = Double.parseDouble(biomeAndProb[1].trim());
-                        } catch (NumberFormatException e) {
-                            System.err.println("Invalid probability format for rule: " + line);
-                        }
-                    }
-
-                    // Create the biome replacement object
-                    BiomeReplacement replacement = new BiomeReplacement(newBiome, probability);
-
-                    // Handle tag-based rules (e.g., #minecraft:is_forest)
-                    if (oldBiome.startsWith("#")) {
-                        String tagName = oldBiome.substring(1); // Remove '#' prefix
-                        tagRules.computeIfAbsent(tagName, k -> new ArrayList<>()).add(replacement);
-                    } else {
-                        // Add direct biome replacement rule
-                        rules.put(oldBiome, replacement);
+                // Handle tag-based rules (e.g., #minecraft:is_forest)
+                if (rule.source().startsWith("#")) {
+                    String tagName = rule.source().substring(1); // Remove '#' prefix
+                    settings.tagRules.computeIfAbsent(tagName, k -> new ArrayList<>()).add(replacement);
+                } else {
+                    // Add direct biome replacement rule
+                    String line = file.file().getFileName() + ":" + rule.line();
+                    String previous = ruleLines.put(rule.source(), line);
+                    if (previous != null) {
+                        file.warn(rule.line(), "Rule for " + rule.source() + " replaces the one on " + previous +
+                                "; list both targets in one weighted rule to pick between them");
                     }
+                    settings.rules.put(rule.source(), replacement);
                 }
             }
+        }
+        return settings.build();
+    }
+
+    /**
+     * The config file followed by the files of its rule directory, in the order they are applied.
+     */
+    public static List<Path> sourceFiles(Path path) {
+        List<Path> files = new ArrayList<>();
+        files.add(path);
+        files.addAll(listRuleFiles(ruleDirectory(path)));
+        return files;
+    }
+
+    /**
+     * Directory holding additional rule files for the given config file.
+     */
+    public static Path ruleDirectory(Path path) {
+        String name = path.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        return path.resolveSibling((extension > 0 ? name.substring(0, extension) : name) + ".d");
+    }
+
+    private static List<Path> listRuleFiles(Path directory) {
+        if (!Files.isDirectory(directory)) return List.of();
+
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries
+                    .filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().endsWith(".properties"))
+                    .sorted(Comparator.comparing(file -> file.getFileName().toString()))
+                    .toList();
         } catch (IOException e) {
-            throw new RuntimeException("Failed to read config file", e);
+            throw new UncheckedIOException("Failed to list rule directory " + directory, e);
+        }
+    }
+
+    private static void applyOption(Builder settings, ConfigParser.ParsedFile file, ConfigParser.Option option) {
+        String value = option.value();
+        switch (option.key()) {
+            case "muteChatInfo" -> settings.muteChatInfo = Boolean.parseBoolean(value);
+            case "chanceMode" -> settings.regionChance = value.equalsIgnoreCase("region");
+            case "metrics" -> settings.metrics = Boolean.parseBoolean(value);
+            case "watchConfig" -> settings.watchConfig = Boolean.parseBoolean(value);
+            case "persistCache" -> settings.persistCache = Boolean.parseBoolean(value);
+            case "optimizeParameters" -> settings.optimizeParameters = Boolean.parseBoolean(value);
+            case "packedClimateSearch" -> settings.packedClimateSearch = Boolean.parseBoolean(value);
+            case "batchedBiomeFill" -> {
+                // Removed option; config files written by earlier versions still contain it
+            }
+            case "regionSize" -> settings.regionSize = Math.max(4, parseInt(file, option, settings.regionSize));
+            case "climateCacheSize" -> settings.climateCacheSize =
+                    Math.max(0, Math.min(CachedParameterList.MAX_SIZE, parseInt(file, option, settings.climateCacheSize)));
+            case "climateCacheQuantization" -> settings.climateCacheQuantization =
+                    Math.max(0, Math.min(16, parseInt(file, option, settings.climateCacheQuantization)));
+            default -> file.warn(option.line(), "Unknown option '" + option.key() + "'");
+        }
+    }
+
+    private static int parseInt(ConfigParser.ParsedFile file, ConfigParser.Option option, int fallback) {
+        try {
+            return Integer.parseInt(option.value());
+        } catch (NumberFormatException e) {
+            file.warn(option.line(), "Invalid number '" + option.value() + "' for " + option.key());
+            return fallback;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,257 @@
+package net.legendaryspy.biome_replacer_neoforge.config;
+
+import net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass parser for one config file. The file is read in one go and tokenized by hand
+ * on character indices, so only the tokens that are kept get allocated. Problems are logged
+ * with file name and line number and the offending line is skipped.
+ */
+final class ConfigParser {
+    record Option(String key, String value, int line) {
+    }
+
+    record Rule(String source, List<Config.WeightedTarget> targets, double probability,
+                List<Config.ClimateCondition> conditions, int line) {
+    }
+
+    record ParsedFile(Path file, List<Option> options, List<Rule> rules) {
+        void warn(int line, String message) {
+            ConfigParser.warn(file, line, message);
+        }
+    }
+
+    private ConfigParser() {
+    }
+
+    static ParsedFile parse(Path file) {
+        String text;
+        try {
+            text = Files.readString(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read config file " + file, e);
+        }
+
+        List<Option> options = new ArrayList<>();
+        List<Rule> rules = new ArrayList<>();
+        int length = text.length();
+        int lineNumber = 0;
+        int lineStart = 0;
+
+        while (lineStart < length) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) lineEnd = length;
+            lineNumber++;
+
+            int start = skipWhitespace(text, lineStart, lineEnd);
+            int end = trimEnd(text, start, lineEnd);
+            lineStart = lineEnd + 1;
+
+            // Skip comments (starting with '!') and empty lines
+            if (start == end || text.charAt(start) == '!') continue;
+
+            // Configuration options (key = value)
+            int equals = indexOf(text, '=', start, end);
+            if (equals >= 0) {
+                String key = text.substring(start, trimEnd(text, start, equals));
+                String value = text.substring(skipWhitespace(text, equals + 1, end), end);
+                if (key.isEmpty()) {
+                    warn(file, lineNumber, "Missing option name");
+                } else {
+                    options.add(new Option(key, value, lineNumber));
+                }
+                continue;
+            }
+
+            // Biome replacement rules (old_biome > new_biome [probability])
+            int arrow = indexOf(text, '>', start, end);
+            if (arrow < 0) {
+                warn(file, lineNumber, "Expected 'old_biome > new_biome [probability]' or 'option = value'");
+                continue;
+            }
+
+            String source = text.substring(start, trimEnd(text, start, arrow));
+
+            // Climate conditions (... where temperature > 0.3 and depth < 0.2) end the line
+            List<Config.ClimateCondition> conditions = List.of();
+            int where = indexOfWord(text, "where", arrow + 1, end);
+            if (where >= 0) {
+                conditions = parseConditions(file, lineNumber, text, where + "where".length(), end);
+                if (conditions == null) continue;
+                end = trimEnd(text, arrow + 1, where);
+            }
+
+            int targetStart = skipWhitespace(text, arrow + 1, end);
+            int targetEnd = nextWhitespace(text, targetStart, end);
+            if (source.isEmpty() || targetStart == targetEnd) {
+                warn(file, lineNumber, "Rule is missing its source or target biome");
+                continue;
+            }
+
+            // Weighted rules (old_biome > 3 new_biome, 1 other_biome, 1 keep) start with a number
+            if (isNumber(text, targetStart, targetEnd)) {
+                List<Config.WeightedTarget> targets = parseWeighted(file, lineNumber, text, targetStart, end);
+                if (!targets.isEmpty()) {
+                    rules.add(new Rule(source, targets, 1.0, conditions, lineNumber));
+                }
+                continue;
+            }
+            String target = text.substring(targetStart, targetEnd);
+
+            double probability = 1.0; // Default to 100% replacement
+            int probabilityStart = skipWhitespace(text, targetEnd, end);
+            if (probabilityStart < end) {
+                try {
+                    probability = Double.parseDouble(text.substring(probabilityStart, end));
+                } catch (NumberFormatException e) {
+                    warn(file, lineNumber, "Invalid probability '" + text.substring(probabilityStart, end) + "', using 1.0");
+                }
+            }
+
+            rules.add(new Rule(source, List.of(new Config.WeightedTarget(target, 1.0)), probability, conditions, lineNumber));
+        }
+
+        return new ParsedFile(file, options, rules);
+    }
+
+    /**
+     * Parses the comma separated "weight biome" pairs of a weighted rule. Invalid pairs are
+     * reported and left out.
+     */
+    private static List<Config.WeightedTarget> parseWeighted(Path file, int lineNumber, String text, int from, int to) {
+        List<Config.WeightedTarget> targets = new ArrayList<>();
+        while (from < to) {
+            int comma = indexOf(text, ',', from, to);
+            int partEnd = comma >= 0 ? comma : to;
+            int weightStart = skipWhitespace(text, from, partEnd);
+            int weightEnd = nextWhitespace(text, weightStart, partEnd);
+            int biomeStart = skipWhitespace(text, weightEnd, partEnd);
+            int biomeEnd = trimEnd(text, biomeStart, partEnd);
+            from = partEnd + 1;
+
+            String part = text.substring(weightStart, biomeEnd);
+            if (biomeStart == biomeEnd || nextWhitespace(text, biomeStart, biomeEnd) != biomeEnd) {
+                warn(file, lineNumber, "Expected 'weight biome' but got '" + part + "'");
+                continue;
+            }
+
+            double weight;
+            try {
+                weight = Double.parseDouble(text.substring(weightStart, weightEnd));
+            } catch (NumberFormatException e) {
+                warn(file, lineNumber, "Invalid weight in '" + part + "'");
+                continue;
+            }
+            if (!(weight > 0) || Double.isInfinite(weight)) {
+                warn(file, lineNumber, "Weight must be a positive number in '" + part + "'");
+                continue;
+            }
+            targets.add(new Config.WeightedTarget(text.substring(biomeStart, biomeEnd), weight));
+        }
+
+        if (targets.isEmpty()) {
+            warn(file, lineNumber, "Weighted rule has no valid targets");
+        }
+        return targets;
+    }
+
+    /**
+     * Parses "axis > value" and "axis < value" conditions joined by "and". Returns
+     * {@code null} if any of them is invalid, so the rule is skipped rather than applied
+     * more widely than intended.
+     */
+    private static List<Config.ClimateCondition> parseConditions(Path file, int lineNumber, String text, int from, int to) {
+        List<Config.ClimateCondition> conditions = new ArrayList<>();
+        while (from < to) {
+            int and = indexOfWord(text, "and", from, to);
+            int partEnd = and >= 0 ? and : to;
+            int partStart = skipWhitespace(text, from, partEnd);
+            String part = text.substring(partStart, trimEnd(text, partStart, partEnd));
+            from = and >= 0 ? and + "and".length() : to;
+
+            int operator = Math.max(part.indexOf('>'), part.indexOf('<'));
+            if (operator <= 0 || part.indexOf('>') >= 0 && part.indexOf('<') >= 0) {
+                warn(file, lineNumber, "Expected 'axis > value' or 'axis < value' but got '" + part + "'");
+                return null;
+            }
+
+            String axis = part.substring(0, operator).trim();
+            if (!Config.ClimateCondition.AXES.contains(axis)) {
+                warn(file, lineNumber, "Unknown climate axis '" + axis + "', expected one of " + Config.ClimateCondition.AXES);
+                return null;
+            }
+
+            String value = part.substring(operator + 1).trim();
+            try {
+                float bound = Float.parseFloat(value);
+                if (!Float.isFinite(bound)) throw new NumberFormatException();
+                conditions.add(new Config.ClimateCondition(axis, part.charAt(operator) == '>', bound));
+            } catch (NumberFormatException e) {
+                warn(file, lineNumber, "Invalid value '" + value + "' for " + axis);
+                return null;
+            }
+        }
+
+        if (conditions.isEmpty()) {
+            warn(file, lineNumber, "'where' needs at least one condition");
+            return null;
+        }
+        return conditions;
+    }
+
+    private static boolean isNumber(String text, int from, int to) {
+        char first = text.charAt(from);
+        if (!Character.isDigit(first) && first != '.') return false;
+        try {
+            Double.parseDouble(text.substring(from, to));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    static void warn(Path file, int line, String message) {
+        BiomeReplacerNeoforge.logWarn(file.getFileName() + ":" + line + ": " + message);
+    }
+
+    private static int skipWhitespace(String text, int from, int to) {
+        while (from < to && Character.isWhitespace(text.charAt(from))) from++;
+        return from;
+    }
+
+    private static int trimEnd(String text, int from, int to) {
+        while (to > from && Character.isWhitespace(text.charAt(to - 1))) to--;
+        return to;
+    }
+
+    private static int nextWhitespace(String text, int from, int to) {
+        while (from < to && !Character.isWhitespace(text.charAt(from))) from++;
+        return from;
+    }
+
+    // Index of a whitespace separated word, or -1
+    private static int indexOfWord(String text, String word, int from, int to) {
+        // Only scans [from, to); String.indexOf would run on through the rest of the file
+        for (int i = from + 1; i + word.length() <= to; i++) {
+            if (!text.regionMatches(i, word, 0, word.length())) continue;
+            boolean startsWord = Character.isWhitespace(text.charAt(i - 1));
+            boolean endsWord = i + word.length() == to || Character.isWhitespace(text.charAt(i + word.length()));
+            if (startsWord && endsWord) return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(String text, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) return i;
+        }
+        return -1;
+    }
+}
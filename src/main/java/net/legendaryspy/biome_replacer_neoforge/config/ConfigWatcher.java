@@ -0,0 +1,99 @@
+package net.legendaryspy.biome_replacer_neoforge.config;
+
+import net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the config file and its rule directory and runs a callback when either changes.
+ * Editors often write a file in several steps, so events are collected until the files have
+ * been quiet for a moment.
+ */
+public class ConfigWatcher implements Runnable {
+    private static final long QUIET_PERIOD_MS = 500;
+
+    private final Path file;
+    private final Path ruleDirectory;
+    private final Runnable onChange;
+    private Thread thread;
+    private WatchService watchService;
+
+    public ConfigWatcher(Path file, Runnable onChange) {
+        this.file = file;
+        this.ruleDirectory = Config.ruleDirectory(file);
+        this.onChange = onChange;
+    }
+
+    public void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            file.getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            // Only picked up if it exists when the server starts
+            if (Files.isDirectory(ruleDirectory)) {
+                ruleDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        } catch (IOException e) {
+            BiomeReplacerNeoforge.logError("Failed to watch config file, automatic reload disabled", e);
+            return;
+        }
+
+        thread = new Thread(this, "Biome Replacer config watcher");
+        thread.setDaemon(true);
+        thread.start();
+        BiomeReplacerNeoforge.log("Watching " + file.getFileName() + " for changes");
+    }
+
+    public void stop() {
+        if (watchService == null) return;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            BiomeReplacerNeoforge.logError("Failed to close config watcher", e);
+        }
+        thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                if (!isRelevant(watchService.take())) continue;
+
+                // Wait until the file stops changing before reloading
+                WatchKey key;
+                while ((key = watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS)) != null) {
+                    isRelevant(key);
+                }
+
+                BiomeReplacerNeoforge.log("Config file changed, reloading rules");
+                onChange.run();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Server is stopping
+        }
+    }
+
+    private boolean isRelevant(WatchKey key) {
+        boolean relevant = false;
+        boolean inRuleDirectory = ruleDirectory.equals(key.watchable());
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (!(event.context() instanceof Path changed)) continue;
+            if (inRuleDirectory ? changed.toString().endsWith(".properties") : file.getFileName().equals(changed)) {
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+}
@@ -0,0 +1,338 @@
+package net.legendaryspy.biome_replacer_neoforge.gametest;
+
+import net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge;
+import net.legendaryspy.biome_replacer_neoforge.climate.ParameterListRebuilder;
+import net.legendaryspy.biome_replacer_neoforge.config.Config;
+import net.legendaryspy.biome_replacer_neoforge.config.Config.BiomeReplacement;
+import net.legendaryspy.biome_replacer_neoforge.config.Config.WeightedTarget;
+import net.legendaryspy.biome_replacer_neoforge.rules.ReplacementTable;
+import net.legendaryspy.biome_replacer_neoforge.rules.RuleCompiler;
+import net.minecraft.core.Holder;
+import net.minecraft.core.QuartPos;
+import net.minecraft.core.Registry;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.gametest.framework.GameTest;
+import net.minecraft.gametest.framework.GameTestAssertException;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.LevelHeightAccessor;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeResolver;
+import net.minecraft.world.level.biome.Climate;
+import net.minecraft.world.level.biome.MultiNoiseBiomeSourceParameterLists;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.ProtoChunk;
+import net.minecraft.world.level.chunk.UpgradeData;
+import net.minecraft.world.level.levelgen.NoiseGeneratorSettings;
+import net.minecraft.world.level.levelgen.NoiseSettings;
+import net.minecraft.world.level.levelgen.RandomState;
+import net.neoforged.neoforge.gametest.GameTestHolder;
+import net.neoforged.neoforge.gametest.PrefixGameTestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Worldgen throughput regression tests, run with {@code ./gradlew runGameTestServer}.
+ * <p>
+ * Each test fills the biomes of a fixed grid of proto chunks on a fixed seed twice: once
+ * through the overworld parameter list, and once through the replaced copy of it built for a
+ * rule set, resolving biomes the way a replaced multi-noise source does. The rules are compiled
+ * and the list is built locally, so the running server's config and published rules are never
+ * touched.
+ * <p>
+ * Correctness is checked on a copy built with {@code optimizeParameters} off. It has the same
+ * points, and so the same search tree, as the vanilla list, so every sampled biome must be
+ * exactly the one the compiled rules map the vanilla biome to at that position. Throughput is
+ * measured with the default, optimized copy. A test fails when throughput relative to the
+ * vanilla pass drops below the checked-in baseline by more than the tolerance (system property
+ * {@value #TOLERANCE_PROPERTY}, default 0.1), or when the baseline has no value for its rule
+ * set. Comparing against a vanilla pass in the same run keeps the baseline independent of the
+ * machine.
+ * <p>
+ * Every run writes the measured ratios to {@value #MEASURED} in the server directory, to be
+ * copied into the baseline file.
+ */
+@GameTestHolder(BiomeReplacerNeoforge.MODID)
+@PrefixGameTestTemplate(false)
+public class WorldgenThroughputTests {
+    private static final String TEMPLATE = "empty";
+    private static final int TIMEOUT_TICKS = 20 * 60 * 5;
+    private static final long SEED = 8_675_309L;
+    private static final int GRID = 32; // Chunks per side
+    private static final int ROUNDS = 3; // Best round counts
+    private static final int[] SAMPLE_COLUMNS = {0, 0, 1, 2, 3, 3}; // Quart x, z pairs within a chunk
+    private static final String BASELINE = "/data/" + BiomeReplacerNeoforge.MODID + "/gametest/throughput_baseline.properties";
+    private static final String MEASURED = "biome_replacer_throughput.properties";
+    private static final String TOLERANCE_PROPERTY = BiomeReplacerNeoforge.MODID + ".gametest.tolerance";
+
+    // Measurements run one at a time on their own thread, so neither the server tick nor
+    // another test skews them
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Biome Replacer throughput test");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private record Measurement(double vanillaChunksPerSecond, double modChunksPerSecond, long compileNanos,
+                               long rebuildNanos, long fillOverheadNanos, int samples, int replaced) {
+        double ratio() {
+            return modChunksPerSecond / vanillaChunksPerSecond;
+        }
+    }
+
+    @GameTest(template = TEMPLATE, batch = "biome_replacer_throughput_none", timeoutTicks = TIMEOUT_TICKS)
+    public static void noRules(GameTestHelper helper) {
+        run(helper, "none", registry -> new Rules(Map.of(), Map.of(), false));
+    }
+
+    @GameTest(template = TEMPLATE, batch = "biome_replacer_throughput_small", timeoutTicks = TIMEOUT_TICKS)
+    public static void smallRuleSet(GameTestHelper helper) {
+        run(helper, "small", registry -> {
+            Map<String, BiomeReplacement> rules = new LinkedHashMap<>();
+            rules.put("minecraft:plains", new BiomeReplacement("minecraft:desert", 1.0));
+            rules.put("minecraft:forest", new BiomeReplacement("minecraft:badlands", 1.0));
+            rules.put("minecraft:taiga", new BiomeReplacement(List.of(
+                    new WeightedTarget("minecraft:snowy_taiga", 3), new WeightedTarget(WeightedTarget.KEEP, 1)), 1.0));
+            rules.put("minecraft:birch_forest", new BiomeReplacement("minecraft:cherry_grove", 0.5));
+            Map<String, List<BiomeReplacement>> tagRules = new LinkedHashMap<>();
+            tagRules.put("minecraft:is_ocean", List.of(new BiomeReplacement("minecraft:mushroom_fields", 1.0)));
+            // chanceMode = region: the taiga and birch forest rules are decided per region
+            return new Rules(rules, tagRules, true);
+        });
+    }
+
+    @GameTest(template = TEMPLATE, batch = "biome_replacer_throughput_large", timeoutTicks = TIMEOUT_TICKS)
+    public static void largeRuleSet(GameTestHelper helper) {
+        run(helper, "large", registry -> {
+            // Every other biome gets a weighted rule over three others, and every tag a rule of its
+            // own. Direct rules take precedence, so the rest is left to the tag rules
+            List<String> ids = registry.keySet().stream().map(Object::toString).sorted().toList();
+            Map<String, BiomeReplacement> rules = new LinkedHashMap<>();
+            for (int i = 0; i < ids.size(); i += 2) {
+                List<WeightedTarget> targets = new ArrayList<>();
+                for (int j = 1; j <= 3; j++) {
+                    targets.add(new WeightedTarget(ids.get((i + j) % ids.size()), j));
+                }
+                rules.put(ids.get(i), new BiomeReplacement(targets, 1.0));
+            }
+            Map<String, List<BiomeReplacement>> tagRules = new LinkedHashMap<>();
+            registry.getTagNames().forEach(tag -> tagRules.put(tag.location().toString(),
+                    List.of(new BiomeReplacement(ids.get(Math.floorMod(tag.hashCode(), ids.size())), 0.5))));
+            return new Rules(rules, tagRules, false);
+        });
+    }
+
+    private record Rules(Map<String, BiomeReplacement> rules, Map<String, List<BiomeReplacement>> tagRules,
+                         boolean regionChance) {
+    }
+
+    private static void run(GameTestHelper helper, String name, Function<Registry<Biome>, Rules> ruleSet) {
+        RegistryAccess registries = helper.getLevel().registryAccess();
+        Path measured = helper.getLevel().getServer().getServerDirectory().resolve(MEASURED);
+        CompletableFuture<Measurement> future = CompletableFuture.supplyAsync(
+                () -> measure(registries, ruleSet.apply(registries.registryOrThrow(Registries.BIOME))), EXECUTOR);
+
+        helper.startSequence().thenWaitUntil(() -> {
+            if (!future.isDone()) {
+                throw new GameTestAssertException("Still measuring");
+            }
+        }).thenExecute(() -> {
+            Measurement measurement;
+            try {
+                measurement = future.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof GameTestAssertException assertion
+                        ? assertion : new GameTestAssertException("Measurement failed: " + e.getCause());
+            }
+
+            Double baseline = baseline(name);
+            double tolerance = Double.parseDouble(System.getProperty(TOLERANCE_PROPERTY, "0.1"));
+            BiomeReplacerNeoforge.log(String.format(Locale.ROOT,
+                    "Throughput %s: %.0f chunks/s vanilla, %.0f chunks/s with rules (%s = %.3f, baseline %s); " +
+                            "compile %.1f ms, parameter list rebuild %.1f ms, biome fill overhead %.1f ms; %d of %d samples replaced",
+                    name, measurement.vanillaChunksPerSecond(), measurement.modChunksPerSecond(), name, measurement.ratio(),
+                    baseline != null ? String.format(Locale.ROOT, "%.3f", baseline) : "not recorded",
+                    measurement.compileNanos() / 1e6,
+                    measurement.rebuildNanos() / 1e6, measurement.fillOverheadNanos() / 1e6, measurement.replaced(),
+                    measurement.samples()));
+            record(measured, name, measurement.ratio());
+
+            if (baseline == null) {
+                throw new GameTestAssertException("No throughput baseline for the " + name + " rule set; record its " +
+                        "measured ratio from " + measured + " in " + BASELINE);
+            }
+            if (measurement.ratio() < baseline * (1 - tolerance)) {
+                throw new GameTestAssertException(String.format(Locale.ROOT,
+                        "Throughput with the %s rule set regressed: %.3f of vanilla, baseline %.3f with tolerance %.2f",
+                        name, measurement.ratio(), baseline, tolerance));
+            }
+        }).thenSucceed();
+    }
+
+    private static Measurement measure(RegistryAccess registries, Rules rules) {
+        Registry<Biome> biomes = registries.registryOrThrow(Registries.BIOME);
+        Holder<NoiseGeneratorSettings> noiseSettings = registries.registryOrThrow(Registries.NOISE_SETTINGS)
+                .getHolderOrThrow(NoiseGeneratorSettings.OVERWORLD);
+        RandomState randomState = RandomState.create(registries, NoiseGeneratorSettings.OVERWORLD, SEED);
+        NoiseSettings noise = noiseSettings.value().noiseSettings();
+        LevelHeightAccessor height = LevelHeightAccessor.create(noise.minY(), noise.height());
+        Climate.ParameterList<Holder<Biome>> original = registries
+                .registryOrThrow(Registries.MULTI_NOISE_BIOME_SOURCE_PARAMETER_LIST)
+                .getOrThrow(MultiNoiseBiomeSourceParameterLists.OVERWORLD).parameters();
+
+        Config.Builder builder = new Config.Builder();
+        builder.rules.putAll(rules.rules());
+        builder.tagRules.putAll(rules.tagRules());
+        builder.regionChance = rules.regionChance();
+        builder.persistCache = false; // Keeps the test's lists out of the world's cache
+        Config.Settings settings = builder.build();
+        builder.optimizeParameters = false;
+        Config.Settings unoptimized = builder.build();
+
+        long start = System.nanoTime();
+        ReplacementTable table = new RuleCompiler(biomes, SEED).compile(settings);
+        long compileNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Climate.ParameterList<Holder<Biome>> replaced = ParameterListRebuilder.build(original, table, settings).parameters();
+        long rebuildNanos = System.nanoTime() - start;
+
+        BiomeResolver vanilla = (x, y, z, sampler) -> original.findValue(sampler.sample(x, y, z));
+        // What a replaced multi-noise source returns from getNoiseBiome
+        BiomeResolver mod = (x, y, z, sampler) -> table.applyAt(replaced.findValue(sampler.sample(x, y, z)), x, z);
+
+        fill(vanilla, randomState, height, biomes); // Warm up both paths
+        fill(mod, randomState, height, biomes);
+        long vanillaNanos = Long.MAX_VALUE;
+        long modNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            fill(vanilla, randomState, height, biomes);
+            vanillaNanos = Math.min(vanillaNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            fill(mod, randomState, height, biomes);
+            modNanos = Math.min(modNanos, System.nanoTime() - start);
+        }
+
+        // Optimizing merges points, which may resolve exact distance ties differently than
+        // vanilla; the unoptimized copy has to match the rules exactly
+        Climate.ParameterList<Holder<Biome>> checked = ParameterListRebuilder.build(original, table, unoptimized).parameters();
+        BiomeResolver checkedMod = (x, y, z, sampler) -> table.applyAt(checked.findValue(sampler.sample(x, y, z)), x, z);
+        Holder<Biome>[] before = fill(vanilla, randomState, height, biomes);
+        Holder<Biome>[] after = fill(checkedMod, randomState, height, biomes);
+        int replacedSamples = 0;
+        for (int i = 0; i < before.length; i++) {
+            Holder<Biome> expected = table.applyAt(table.apply(before[i]), sampleQuartX(i, height), sampleQuartZ(i, height));
+            if (after[i] != expected) {
+                throw new GameTestAssertException("Sample " + i + " differs from the rules: expected " +
+                        expected.getRegisteredName() + " in place of " + before[i].getRegisteredName() + " but got " +
+                        after[i].getRegisteredName());
+            }
+            if (after[i] != before[i]) {
+                replacedSamples++;
+            }
+        }
+        if (!table.isEmpty() && replacedSamples == 0) {
+            throw new GameTestAssertException("No sampled biome was replaced");
+        }
+
+        double chunks = GRID * GRID;
+        return new Measurement(chunks * 1e9 / vanillaNanos, chunks * 1e9 / modNanos, compileNanos, rebuildNanos,
+                modNanos - vanillaNanos, before.length, replacedSamples);
+    }
+
+    /**
+     * Fills the biomes of every section in the grid and returns the biomes at the sample positions.
+     */
+    @SuppressWarnings("unchecked")
+    private static Holder<Biome>[] fill(BiomeResolver resolver, RandomState randomState, LevelHeightAccessor height,
+                                        Registry<Biome> biomes) {
+        Climate.Sampler sampler = randomState.sampler();
+        int sectionCount = height.getSectionsCount();
+        int columns = SAMPLE_COLUMNS.length / 2;
+        Holder<Biome>[] samples = new Holder[GRID * GRID * columns * sectionCount];
+        int chunkIndex = 0;
+
+        for (int chunkZ = 0; chunkZ < GRID; chunkZ++) {
+            for (int chunkX = 0; chunkX < GRID; chunkX++) {
+                ChunkPos pos = new ChunkPos(chunkX, chunkZ);
+                ProtoChunk chunk = new ProtoChunk(pos, UpgradeData.EMPTY, height, biomes, null);
+                for (int section = 0; section < sectionCount; section++) {
+                    int quartY = QuartPos.fromSection(height.getSectionYFromSectionIndex(section));
+                    LevelChunkSection filled = chunk.getSection(section);
+                    filled.fillBiomesFromNoise(resolver, sampler, QuartPos.fromSection(chunkX), quartY,
+                            QuartPos.fromSection(chunkZ));
+                    for (int column = 0; column < columns; column++) {
+                        samples[(chunkIndex * columns + column) * sectionCount + section] =
+                                filled.getNoiseBiome(SAMPLE_COLUMNS[column * 2], 2, SAMPLE_COLUMNS[column * 2 + 1]);
+                    }
+                }
+                chunkIndex++;
+            }
+        }
+        return samples;
+    }
+
+    // Quart positions of a sample returned by fill, see the index computed there
+    private static int sampleQuartX(int sample, LevelHeightAccessor height) {
+        int column = sample / height.getSectionsCount() % (SAMPLE_COLUMNS.length / 2);
+        int chunk = sample / height.getSectionsCount() / (SAMPLE_COLUMNS.length / 2);
+        return QuartPos.fromSection(chunk % GRID) + SAMPLE_COLUMNS[column * 2];
+    }
+
+    private static int sampleQuartZ(int sample, LevelHeightAccessor height) {
+        int column = sample / height.getSectionsCount() % (SAMPLE_COLUMNS.length / 2);
+        int chunk = sample / height.getSectionsCount() / (SAMPLE_COLUMNS.length / 2);
+        return QuartPos.fromSection(chunk / GRID) + SAMPLE_COLUMNS[column * 2 + 1];
+    }
+
+    // Baseline ratio of a rule set as written in the baseline file, or null if none was recorded
+    private static Double baseline(String name) {
+        try (InputStream in = WorldgenThroughputTests.class.getResourceAsStream(BASELINE)) {
+            if (in == null) {
+                throw new GameTestAssertException("Missing throughput baseline " + BASELINE);
+            }
+            Properties properties = new Properties();
+            properties.load(in);
+            String value = properties.getProperty(name);
+            return value == null || value.isBlank() ? null : Double.parseDouble(value.trim());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + BASELINE, e);
+        }
+    }
+
+    // Tests finish on the server thread one after another, but keep concurrent batches safe anyway
+    private static synchronized void record(Path file, String name, double ratio) {
+        Properties properties = new Properties();
+        try {
+            if (Files.exists(file)) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    properties.load(in);
+                }
+            }
+            properties.setProperty(name, String.format(Locale.ROOT, "%.3f", ratio));
+            try (OutputStream out = Files.newOutputStream(file)) {
+                properties.store(out, "Measured by WorldgenThroughputTests, see " + BASELINE);
+            }
+        } catch (IOException e) {
+            BiomeReplacerNeoforge.logError("Failed to record throughput in " + file, e);
+        }
+    }
+}
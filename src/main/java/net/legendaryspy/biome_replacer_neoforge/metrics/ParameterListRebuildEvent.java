@@ -0,0 +1,19 @@
+package net.legendaryspy.biome_replacer_neoforge.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("biome_replacer_neoforge.ParameterListRebuild")
+@Label("Parameter List Rebuild")
+@Category({"Biome Replacer"})
+@Description("Rebuild of a biome source's replaced climate parameter list")
+public class ParameterListRebuildEvent extends Event {
+    @Label("Points Before")
+    public int pointsBefore;
+
+    @Label("Points After")
+    public int pointsAfter;
+}
@@ -0,0 +1,44 @@
+package net.legendaryspy.biome_replacer_neoforge.metrics;
+
+import net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide timings for rule compilation and parameter list rebuilds.
+ * Nothing is recorded while metrics are disabled in the config.
+ */
+public final class ReplacementMetrics {
+    private static final LongAdder REBUILDS = new LongAdder();
+    private static final LongAdder REBUILD_NANOS = new LongAdder();
+    private static volatile long lastCompileNanos;
+
+    private ReplacementMetrics() {
+    }
+
+    // Of the published settings; code compiling new rules checks the settings it compiles instead
+    public static boolean enabled() {
+        return BiomeReplacerNeoforge.settings().metrics();
+    }
+
+    public static void recordCompile(long nanos) {
+        lastCompileNanos = nanos;
+    }
+
+    public static void recordRebuild(long nanos) {
+        REBUILDS.increment();
+        REBUILD_NANOS.add(nanos);
+    }
+
+    public static long lastCompileNanos() {
+        return lastCompileNanos;
+    }
+
+    public static long rebuilds() {
+        return REBUILDS.sum();
+    }
+
+    public static long rebuildNanos() {
+        return REBUILD_NANOS.sum();
+    }
+}
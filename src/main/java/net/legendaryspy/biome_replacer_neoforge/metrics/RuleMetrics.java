@@ -0,0 +1,90 @@
+package net.legendaryspy.biome_replacer_neoforge.metrics;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.biome.Biome;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-rule counters for one compiled table, kept in two kinds. Samples count biome lookups
+ * during worldgen: every position the end and checkerboard sources sample, and every position a
+ * region chance rule decides. Points count climate parameter points of multi-noise lists (the
+ * overworld and nether) when a list is rebuilt. Fixed rules are applied to those lists, not per
+ * sample, so for them points say how much of the climate space a rule covers, not how often it
+ * fires during worldgen. Each kind counts the lookups of biomes covered by the rule and the ones
+ * that actually replaced it.
+ * <p>
+ * Counters are striped {@link LongAdder}s so concurrent worldgen threads don't contend. When
+ * metrics are disabled no instance exists and the table skips recording entirely.
+ */
+public final class RuleMetrics {
+    private final Reference2IntOpenHashMap<Holder<Biome>> ruleOf;
+    private final String[] ruleNames;
+    private final LongAdder[] samples;
+    private final LongAdder[] sampleHits;
+    private final LongAdder[] points;
+    private final LongAdder[] pointHits;
+
+    public record RuleStats(String rule, long samples, long sampleHits, long points, long pointHits) {
+    }
+
+    public RuleMetrics(List<String> ruleNames, Reference2IntOpenHashMap<Holder<Biome>> ruleOf) {
+        ruleOf.defaultReturnValue(-1);
+        ruleOf.trim();
+        this.ruleOf = ruleOf;
+        this.ruleNames = ruleNames.toArray(new String[0]);
+        this.samples = counters(this.ruleNames.length);
+        this.sampleHits = counters(this.ruleNames.length);
+        this.points = counters(this.ruleNames.length);
+        this.pointHits = counters(this.ruleNames.length);
+    }
+
+    /**
+     * Counts a biome sampled during worldgen.
+     */
+    public void recordSample(Holder<Biome> source, boolean hit) {
+        record(source, hit, samples, sampleHits);
+    }
+
+    /**
+     * Counts a climate parameter point of a list being rebuilt.
+     */
+    public void recordPoint(Holder<Biome> source, boolean hit) {
+        record(source, hit, points, pointHits);
+    }
+
+    /**
+     * Current counters, most sampled rules first, then by points.
+     */
+    public List<RuleStats> snapshot() {
+        List<RuleStats> stats = new ArrayList<>(ruleNames.length);
+        for (int i = 0; i < ruleNames.length; i++) {
+            stats.add(new RuleStats(ruleNames[i], samples[i].sum(), sampleHits[i].sum(), points[i].sum(), pointHits[i].sum()));
+        }
+        stats.sort(Comparator.comparingLong(RuleStats::samples).thenComparingLong(RuleStats::points).reversed());
+        return stats;
+    }
+
+    private void record(Holder<Biome> source, boolean hit, LongAdder[] lookups, LongAdder[] hits) {
+        int rule = ruleOf.getInt(source);
+        if (rule < 0) {
+            return;
+        }
+        lookups[rule].increment();
+        if (hit) {
+            hits[rule].increment();
+        }
+    }
+
+    private static LongAdder[] counters(int count) {
+        LongAdder[] counters = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,22 @@
+package net.legendaryspy.biome_replacer_neoforge.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("biome_replacer_neoforge.RulesReload")
+@Label("Rules Reload")
+@Category({"Biome Replacer"})
+@Description("Reading, compiling and publishing the replacement rules")
+public class RulesReloadEvent extends Event {
+    @Label("Direct Rules")
+    public int directRules;
+
+    @Label("Tag Rules")
+    public int tagRules;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,24 @@
+package net.legendaryspy.biome_replacer_neoforge.mixin;
+
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeSource;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Mutable;
+import org.spongepowered.asm.mixin.gen.Accessor;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+@Mixin(BiomeSource.class)
+public interface BiomeSourceAccessor {
+
+    @Mutable
+    @Accessor("possibleBiomes")
+    void biome_replacer$setPossibleBiomes(Supplier<Set<Holder<Biome>>> possibleBiomes);
+
+    @Invoker("collectPossibleBiomes")
+    Stream<Holder<Biome>> biome_replacer$collectPossibleBiomes();
+}
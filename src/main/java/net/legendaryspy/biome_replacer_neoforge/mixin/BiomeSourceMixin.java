@@ -0,0 +1,84 @@
+package net.legendaryspy.biome_replacer_neoforge.mixin;
+
+import com.llamalad7.mixinextras.sugar.Local;
+import com.mojang.datafixers.util.Pair;
+import net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge;
+import net.legendaryspy.biome_replacer_neoforge.climate.ReplaceableBiomeSource;
+import net.legendaryspy.biome_replacer_neoforge.rules.ReachableBiomes;
+import net.legendaryspy.biome_replacer_neoforge.rules.ReplacementTable;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeSource;
+import net.minecraft.world.level.biome.CheckerboardColumnBiomeSource;
+import net.minecraft.world.level.biome.TheEndBiomeSource;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Ends biome searches (/locate biome, structure and spawn searches) right away when no biome
+ * the source can still produce matches. Otherwise a search for a replaced biome samples its
+ * whole radius before giving up.
+ */
+@Mixin(BiomeSource.class)
+public abstract class BiomeSourceMixin {
+
+    // Recomputed when a different table is published; racing recomputes are harmless
+    @Unique
+    private volatile ReachableBiomes reachableBiomes;
+
+    @Shadow
+    protected abstract Stream<Holder<Biome>> collectPossibleBiomes();
+
+    @Inject(method = "findBiomeHorizontal(IIIIILjava/util/function/Predicate;Lnet/minecraft/util/RandomSource;ZLnet/minecraft/world/level/biome/Climate$Sampler;)Lcom/mojang/datafixers/util/Pair;",
+            at = @At("HEAD"), cancellable = true)
+    private void onFindBiomeHorizontal(CallbackInfoReturnable<Pair<BlockPos, Holder<Biome>>> cir,
+                                       @Local(argsOnly = true) Predicate<Holder<Biome>> predicate) {
+        if (isUnreachable(predicate)) {
+            cir.setReturnValue(null);
+        }
+    }
+
+    @Inject(method = "findClosestBiome3d", at = @At("HEAD"), cancellable = true)
+    private void onFindClosestBiome3d(CallbackInfoReturnable<Pair<BlockPos, Holder<Biome>>> cir,
+                                      @Local(argsOnly = true) Predicate<Holder<Biome>> predicate) {
+        if (isUnreachable(predicate)) {
+            cir.setReturnValue(null);
+        }
+    }
+
+    @Unique
+    private boolean isUnreachable(Predicate<Holder<Biome>> predicate) {
+        ReplacementTable table = BiomeReplacerNeoforge.replacementTable();
+        if (table.isEmpty() || !isPatched()) {
+            return false; // Searches behave exactly as in vanilla
+        }
+
+        ReachableBiomes reachable = reachableBiomes;
+        if (reachable == null || reachable.table() != table) {
+            // Sources patched by this mod report their biomes after replacement here; the
+            // possibleBiomes() set may still hold biomes of earlier rules
+            Set<Holder<Biome>> biomes = collectPossibleBiomes().collect(Collectors.toUnmodifiableSet());
+            reachable = new ReachableBiomes(table, biomes);
+            reachableBiomes = reachable;
+        }
+        return !reachable.anyMatch(predicate);
+    }
+
+    // Other sources' biomes aren't touched by the rules, so there is nothing to short-circuit
+    @Unique
+    private boolean isPatched() {
+        Object source = this;
+        return source instanceof ReplaceableBiomeSource || source instanceof TheEndBiomeSource
+                || source instanceof CheckerboardColumnBiomeSource;
+    }
+}
@@ -0,0 +1,43 @@
+package net.legendaryspy.biome_replacer_neoforge.mixin;
+
+import com.llamalad7.mixinextras.injector.ModifyReturnValue;
+import com.llamalad7.mixinextras.sugar.Local;
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeSource;
+import net.minecraft.world.level.biome.CheckerboardColumnBiomeSource;
+import net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge;
+import net.legendaryspy.biome_replacer_neoforge.rules.PossibleBiomes;
+import net.legendaryspy.biome_replacer_neoforge.rules.ReplacementTable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+@Mixin(value = CheckerboardColumnBiomeSource.class, priority = Integer.MIN_VALUE)
+public abstract class CheckerboardColumnBiomeSourceMixin extends BiomeSource {
+
+    @ModifyReturnValue(method = "getNoiseBiome", at = @At("RETURN"))
+    private Holder<Biome> onNoiseBiomeReturn(Holder<Biome> original,
+                                             @Local(argsOnly = true, ordinal = 0) int x,
+                                             @Local(argsOnly = true, ordinal = 2) int z) {
+        ReplacementTable table = BiomeReplacerNeoforge.replacementTable();
+        return table.applyAt(table.apply(original), x, z);
+    }
+
+    @ModifyReturnValue(method = "collectPossibleBiomes", at = @At("RETURN"))
+    private Stream<Holder<Biome>> onCollectPossibleBiomes(Stream<Holder<Biome>> original) {
+        ReplacementTable table = BiomeReplacerNeoforge.replacementTable();
+        if (table.isEmpty()) {
+            return original;
+        }
+
+        long start = System.nanoTime();
+        List<Holder<Biome>> before = original.toList();
+        Set<Holder<Biome>> possible = PossibleBiomes.replace(before.stream(), table);
+        PossibleBiomes.logChange("checkerboard source", before, possible, System.nanoTime() - start);
+        return possible.stream();
+    }
+}
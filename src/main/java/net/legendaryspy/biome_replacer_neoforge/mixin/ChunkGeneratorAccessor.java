@@ -0,0 +1,25 @@
+package net.legendaryspy.biome_replacer_neoforge.mixin;
+
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeGenerationSettings;
+import net.minecraft.world.level.biome.FeatureSorter;
+import net.minecraft.world.level.chunk.ChunkGenerator;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Mutable;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+@Mixin(ChunkGenerator.class)
+public interface ChunkGeneratorAccessor {
+
+    @Mutable
+    @Accessor("featuresPerStep")
+    void biome_replacer$setFeaturesPerStep(Supplier<List<FeatureSorter.StepFeatureData>> featuresPerStep);
+
+    @Accessor("generationSettingsGetter")
+    Function<Holder<Biome>, BiomeGenerationSettings> biome_replacer$getGenerationSettingsGetter();
+}
@@ -1,51 +1,99 @@
 package net.legendaryspy.biome_replacer_neoforge.mixin;
 
-import com.mojang.datafixers.util.Pair;
+import com.llamalad7.mixinextras.injector.ModifyReturnValue;
+import com.llamalad7.mixinextras.sugar.Local;
+import com.mojang.datafixers.util.Either;
 import net.minecraft.core.Holder;
 import net.minecraft.world.level.biome.Biome;
 import net.minecraft.world.level.biome.BiomeSource;
 import net.minecraft.world.level.biome.Climate;
 import net.minecraft.world.level.biome.MultiNoiseBiomeSource;
+import net.minecraft.world.level.biome.MultiNoiseBiomeSourceParameterList;
 import net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge;
+import net.legendaryspy.biome_replacer_neoforge.climate.ReplaceableBiomeSource;
+import net.legendaryspy.biome_replacer_neoforge.climate.ReplacedParameters;
+import net.legendaryspy.biome_replacer_neoforge.rules.PossibleBiomes;
+import net.legendaryspy.biome_replacer_neoforge.rules.ReplacementTable;
+import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
-import org.spongepowered.asm.mixin.injection.Inject;
-import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Mixin(value = MultiNoiseBiomeSource.class, priority = Integer.MIN_VALUE)
-public abstract class MultiNoiseBiomeSourceMixin extends BiomeSource{
+public abstract class MultiNoiseBiomeSourceMixin extends BiomeSource implements ReplaceableBiomeSource {
 
+    @Shadow
+    @Final
+    private Either<Climate.ParameterList<Holder<Biome>>, Holder<MultiNoiseBiomeSourceParameterList>> parameters;
+
+    // Taken from the published rules whenever a different table is published. The server's
+    // sources find their copy prebuilt there; sources created later get theirs added on first use
     @Unique
-    private Climate.ParameterList<Holder<Biome>> modifiedParameters;
-
-    @Inject(method = "parameters", at = @At("TAIL"), cancellable = true)
-    private void onParametersReturn(CallbackInfoReturnable<Climate.ParameterList<Holder<Biome>>> cir) {
-        if (modifiedParameters == null) {
-            // Lazy-load the biome replacement rules if they haven't been prepared yet
-            BiomeReplacerNeoforge.prepareRulesIfNeeded();
-            findAndReplace(cir.getReturnValue());
+    private ReplacedParameters modifiedParameters;
+
+    @Shadow
+    protected abstract Climate.ParameterList<Holder<Biome>> parameters();
+
+    // parameters() runs for every climate sample, so these hooks avoid allocating a callback object
+    @ModifyReturnValue(method = "parameters", at = @At("RETURN"))
+    private Climate.ParameterList<Holder<Biome>> onParametersReturn(Climate.ParameterList<Holder<Biome>> original) {
+        ReplacedParameters replaced = modifiedParameters;
+        if (replaced == null || replaced.table() != BiomeReplacerNeoforge.replacementTable()) {
+            replaced = BiomeReplacerNeoforge.replacedParameters(original);
+            modifiedParameters = replaced;
         }
-        cir.setReturnValue(modifiedParameters);
+        return replaced.parameters();
     }
 
-    @Unique
-    private void findAndReplace(Climate.ParameterList<Holder<Biome>> parameterList) {
-        if (BiomeReplacerNeoforge.noReplacements()) {
-            modifiedParameters = parameterList;
-            BiomeReplacerNeoforge.log("No rules found, skipping replacements");
-            return;
-        }
+    @Override
+    public void biome_replacer$refresh() {
+        modifiedParameters = BiomeReplacerNeoforge.replacedParameters(biome_replacer$originalParameters());
+    }
+
+    // Same as the vanilla parameters() body, without going through the replacement hook
+    @Override
+    public Climate.ParameterList<Holder<Biome>> biome_replacer$originalParameters() {
+        return parameters.map(list -> list, preset -> preset.value().parameters());
+    }
 
-        // Replace biomes in the parameter list based on the replacement rules
-        List<Pair<Climate.ParameterPoint, Holder<Biome>>> updatedParameterList = parameterList.values().stream()
-                .map(entry -> new Pair<>(entry.getFirst(), BiomeReplacerNeoforge.replaceIfNeeded(entry.getSecond())))
-                .collect(Collectors.toList());
+    @Override
+    public Climate.ParameterList<Holder<Biome>> biome_replacer$replacedParameters() {
+        return parameters();
+    }
+
+    @Override
+    public ReplacedParameters biome_replacer$replaced() {
+        parameters(); // Brings the copy up to date with the published table
+        return modifiedParameters;
+    }
+
+    @ModifyReturnValue(method = "getNoiseBiome(IIILnet/minecraft/world/level/biome/Climate$Sampler;)Lnet/minecraft/core/Holder;",
+            at = @At("RETURN"))
+    private Holder<Biome> onNoiseBiomeReturn(Holder<Biome> original,
+                                             @Local(argsOnly = true, ordinal = 0) int x,
+                                             @Local(argsOnly = true, ordinal = 2) int z) {
+        return BiomeReplacerNeoforge.replacementTable().applyAt(original, x, z);
+    }
+
+    @ModifyReturnValue(method = "collectPossibleBiomes", at = @At("RETURN"))
+    private Stream<Holder<Biome>> onCollectPossibleBiomes(Stream<Holder<Biome>> original) {
+        ReplacementTable table = BiomeReplacerNeoforge.replacementTable();
+        if (table.isEmpty()) {
+            return original;
+        }
 
-        modifiedParameters = new Climate.ParameterList<>(updatedParameterList);
-        BiomeReplacerNeoforge.log("Successfully applied biome replacements after all other mods");
+        // The replaced parameter list already drops fixed-replaced biomes; region chance rules
+        // can still place biomes it doesn't contain, which feature sorting must know about
+        long start = System.nanoTime();
+        Set<Holder<Biome>> possible = PossibleBiomes.expandPositional(original, table);
+        Set<Holder<Biome>> before = new LinkedHashSet<>();
+        biome_replacer$originalParameters().values().forEach(entry -> before.add(entry.getSecond()));
+        PossibleBiomes.logChange("multi-noise source", before, possible, System.nanoTime() - start);
+        return possible.stream();
     }
-}
\ No newline at end of file
+}
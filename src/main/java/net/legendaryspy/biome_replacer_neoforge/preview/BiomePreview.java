@@ -0,0 +1,282 @@
+package net.legendaryspy.biome_replacer_neoforge.preview;
+
+import net.legendaryspy.biome_replacer_neoforge.climate.ReplaceableBiomeSource;
+import net.legendaryspy.biome_replacer_neoforge.climate.ReplacedParameters;
+import net.legendaryspy.biome_replacer_neoforge.rules.ReplacementTable;
+import net.minecraft.core.Holder;
+import net.minecraft.core.QuartPos;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeSource;
+import net.minecraft.world.level.biome.Climate;
+import net.minecraft.world.level.storage.LevelResource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders a top-down biome map of a multi-noise dimension before and after replacement.
+ * <p>
+ * Only the climate sampler and the parameter lists are queried, no chunks are generated, so
+ * large areas take seconds. The area is split into tiles that are sampled in parallel on a
+ * fork-join pool; every pixel samples one position at the requested Y. Output is a PNG with
+ * the original map on the left and the replaced one on the right, plus a CSV with each
+ * biome's share of the area in both. Rendering uses plain {@link BufferedImage}s and works on
+ * headless machines.
+ */
+public final class BiomePreview {
+    public static final int MAX_PIXELS_PER_SIDE = 4096;
+    private static final int TILE_SIZE = 64; // Pixels per tile edge before splitting stops
+    private static final int GAP = 8; // Pixels between the two maps
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss", Locale.ROOT);
+
+    /**
+     * Area to render: {@code size} blocks square around the center, one pixel every
+     * {@code step} blocks (rounded up to whole quarts). The step is raised when the image
+     * would otherwise exceed {@link #MAX_PIXELS_PER_SIDE}, so the whole area is always covered.
+     */
+    public record Area(int centerX, int centerZ, int size, int y, int step) {
+        public Area {
+            step = Math.max(step, Mth.positiveCeilDiv(Math.max(1, size), MAX_PIXELS_PER_SIDE));
+            step = Math.max(QuartPos.SIZE, Mth.roundToward(step, QuartPos.SIZE));
+            size = Math.max(step, size);
+        }
+
+        /**
+         * An area with the smallest step that keeps the image within {@link #MAX_PIXELS_PER_SIDE}.
+         */
+        public static Area of(int centerX, int centerZ, int size, int y) {
+            return new Area(centerX, centerZ, size, y, Mth.positiveCeilDiv(size, MAX_PIXELS_PER_SIDE));
+        }
+
+        int pixels() {
+            return size / step;
+        }
+
+        /**
+         * Edge length in blocks of the square the pixels actually cover.
+         */
+        public int coveredSize() {
+            return pixels() * step;
+        }
+    }
+
+    public record Result(Path image, Path csv, int pixels, int step, int biomesBefore, int biomesAfter, long nanos) {
+        public String describe() {
+            return "Rendered " + pixels + "x" + pixels + " biome preview of " + pixels * step + "x" + pixels * step +
+                    " blocks (" + step + " blocks per pixel) in " + nanos / 1_000_000 + " ms (" +
+                    biomesBefore + " biomes before, " + biomesAfter + " after): " + image.getFileName();
+        }
+    }
+
+    private BiomePreview() {
+    }
+
+    /**
+     * Renders the preview off-thread into the world's {@code biome_replacer_preview} folder.
+     */
+    public static CompletableFuture<Result> renderAsync(ServerLevel level, Area area) {
+        Path output = level.getServer().getWorldPath(LevelResource.ROOT).resolve("biome_replacer_preview");
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return render(level, area, output);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write biome preview", e);
+            }
+        });
+    }
+
+    /**
+     * Renders the preview for a level and writes both files to {@code outputDirectory}.
+     * Blocks the calling thread; run it off the server thread.
+     */
+    public static Result render(ServerLevel level, Area area, Path outputDirectory) throws IOException {
+        BiomeSource biomeSource = level.getChunkSource().getGenerator().getBiomeSource();
+        if (!(biomeSource instanceof ReplaceableBiomeSource source)) {
+            throw new IllegalArgumentException(level.dimension().location() + " does not use a multi-noise biome source");
+        }
+
+        long start = System.nanoTime();
+        Registry<Biome> registry = level.registryAccess().registryOrThrow(Registries.BIOME);
+        ReplacedParameters replaced = source.biome_replacer$replaced(); // List and table of the same reload
+        Sampling sampling = new Sampling(level.getChunkSource().randomState().sampler(),
+                source.biome_replacer$originalParameters(), replaced.parameters(), replaced.table(), registry, area);
+
+        ForkJoinPool.commonPool().invoke(new Tile(sampling, 0, 0, sampling.pixels, sampling.pixels));
+
+        long[] before = sampling.count(sampling.before);
+        long[] after = sampling.count(sampling.after);
+
+        Files.createDirectories(outputDirectory);
+        String name = level.dimension().location().getPath().replace('/', '_') + "_" + LocalDateTime.now().format(TIMESTAMP);
+        Path image = outputDirectory.resolve(name + ".png");
+        Path csv = outputDirectory.resolve(name + ".csv");
+        writeImage(sampling, image);
+        writeCsv(registry, before, after, (long) sampling.pixels * sampling.pixels, csv);
+
+        return new Result(image, csv, sampling.pixels, sampling.step, countNonZero(before), countNonZero(after), System.nanoTime() - start);
+    }
+
+    // Shared, read-only inputs and per-pixel biome ids of both maps
+    private static final class Sampling {
+        final Climate.Sampler sampler;
+        final Climate.ParameterList<Holder<Biome>> original;
+        final Climate.ParameterList<Holder<Biome>> replaced;
+        final ReplacementTable table;
+        final Registry<Biome> registry;
+        final int pixels;
+        final int originX;
+        final int originZ;
+        final int step;
+        final int quartY;
+        final int[] before;
+        final int[] after;
+
+        Sampling(Climate.Sampler sampler, Climate.ParameterList<Holder<Biome>> original,
+                 Climate.ParameterList<Holder<Biome>> replaced, ReplacementTable table,
+                 Registry<Biome> registry, Area area) {
+            this.sampler = sampler;
+            this.original = original;
+            this.replaced = replaced;
+            this.table = table;
+            this.registry = registry;
+            this.pixels = area.pixels();
+            this.step = area.step();
+            this.originX = area.centerX() - pixels * step / 2;
+            this.originZ = area.centerZ() - pixels * step / 2;
+            this.quartY = QuartPos.fromBlock(area.y());
+            this.before = new int[pixels * pixels];
+            this.after = new int[pixels * pixels];
+        }
+
+        void sample(int px, int pz) {
+            int quartX = QuartPos.fromBlock(originX + px * step);
+            int quartZ = QuartPos.fromBlock(originZ + pz * step);
+            Climate.TargetPoint target = sampler.sample(quartX, quartY, quartZ);
+
+            int index = pz * pixels + px;
+            before[index] = registry.getId(original.findValue(target).value());
+            after[index] = registry.getId(table.previewAt(replaced.findValue(target), quartX, quartZ).value());
+        }
+
+        long[] count(int[] ids) {
+            long[] counts = new long[registry.size()];
+            for (int id : ids) {
+                counts[id]++;
+            }
+            return counts;
+        }
+    }
+
+    private static final class Tile extends RecursiveAction {
+        private final Sampling sampling;
+        private final int minX;
+        private final int minZ;
+        private final int maxX;
+        private final int maxZ;
+
+        Tile(Sampling sampling, int minX, int minZ, int maxX, int maxZ) {
+            this.sampling = sampling;
+            this.minX = minX;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxZ = maxZ;
+        }
+
+        @Override
+        protected void compute() {
+            int width = maxX - minX;
+            int height = maxZ - minZ;
+            if (width <= TILE_SIZE && height <= TILE_SIZE) {
+                for (int z = minZ; z < maxZ; z++) {
+                    for (int x = minX; x < maxX; x++) {
+                        sampling.sample(x, z);
+                    }
+                }
+                return;
+            }
+
+            // Split along the longer side
+            if (width >= height) {
+                int mid = minX + width / 2;
+                invokeAll(new Tile(sampling, minX, minZ, mid, maxZ), new Tile(sampling, mid, minZ, maxX, maxZ));
+            } else {
+                int mid = minZ + height / 2;
+                invokeAll(new Tile(sampling, minX, minZ, maxX, mid), new Tile(sampling, minX, mid, maxX, maxZ));
+            }
+        }
+    }
+
+    private static void writeImage(Sampling sampling, Path file) throws IOException {
+        int pixels = sampling.pixels;
+        BufferedImage image = new BufferedImage(pixels * 2 + GAP, pixels, BufferedImage.TYPE_INT_RGB);
+        int[] colors = new int[sampling.registry.size()];
+        for (int id = 0; id < colors.length; id++) {
+            colors[id] = colorOf(sampling.registry.getKey(sampling.registry.byId(id)));
+        }
+
+        int[] row = new int[pixels * 2 + GAP];
+        for (int z = 0; z < pixels; z++) {
+            for (int x = 0; x < pixels; x++) {
+                row[x] = colors[sampling.before[z * pixels + x]];
+                row[pixels + GAP + x] = colors[sampling.after[z * pixels + x]];
+            }
+            image.setRGB(0, z, row.length, 1, row, 0, row.length);
+        }
+        ImageIO.write(image, "png", file.toFile());
+    }
+
+    private static void writeCsv(Registry<Biome> registry, long[] before, long[] after, long total, Path file) throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < before.length; id++) {
+            if (before[id] > 0 || after[id] > 0) {
+                ids.add(id);
+            }
+        }
+        ids.sort(Comparator.comparingLong((Integer id) -> after[id]).reversed());
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+            writer.println("biome,color,samples_before,share_before,samples_after,share_after");
+            for (int id : ids) {
+                ResourceLocation key = registry.getKey(registry.byId(id));
+                writer.printf(Locale.ROOT, "%s,#%06x,%d,%.6f,%d,%.6f%n", key, colorOf(key),
+                        before[id], (double) before[id] / total, after[id], (double) after[id] / total);
+            }
+        }
+    }
+
+    // Stable, well-spread color per biome id so maps can be compared across runs
+    private static int colorOf(ResourceLocation key) {
+        int hash = key == null ? 0 : key.hashCode() * 0x9E3779B9;
+        float hue = (hash >>> 8 & 0xFFFF) / 65536.0F;
+        float saturation = 0.45F + (hash & 0xF) / 40.0F;
+        float value = 0.6F + (hash >>> 4 & 0xF) / 40.0F;
+        return Mth.hsvToRgb(hue, saturation, value) & 0xFFFFFF;
+    }
+
+    private static int countNonZero(long[] counts) {
+        int count = 0;
+        for (long value : counts) {
+            if (value > 0) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,290 @@
+package net.legendaryspy.biome_replacer_neoforge.rewrite;
+
+import net.legendaryspy.biome_replacer_neoforge.rules.IdReplacementTable;
+import net.minecraft.core.QuartPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.util.Mth;
+import net.minecraft.util.SimpleBitStorage;
+import net.minecraft.world.level.chunk.storage.RegionFileVersion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites the biome palettes of every chunk in one {@code .mca} file.
+ * <p>
+ * The file is memory-mapped for reading. Chunks whose biomes don't change are copied through
+ * as their original compressed bytes; changed chunks are decoded, get their section biome
+ * palettes remapped and are re-encoded with the same compression. Block states and everything
+ * else in the chunk are left as they are. The result is written to a temporary file that then
+ * replaces the original, so an interrupted run never leaves a half-written region behind.
+ */
+final class RegionFileRewriter {
+    private static final int SECTOR_BYTES = 4096;
+    private static final int CHUNKS_PER_REGION = 1024;
+    private static final int HEADER_BYTES = 2 * SECTOR_BYTES; // Locations, then timestamps
+    private static final int CHUNK_HEADER_BYTES = 5; // Length, then compression type
+    private static final int EXTERNAL_FLAG = 128; // Chunk payload lives in a separate .mcc file
+    private static final int MAX_SECTORS = 255;
+    private static final int BIOMES_PER_SECTION = 64;
+
+    private final IdReplacementTable table;
+
+    record Stats(int chunks, int changedChunks, long bytes) {
+    }
+
+    RegionFileRewriter(IdReplacementTable table) {
+        this.table = table;
+    }
+
+    Stats rewrite(Path file) throws IOException {
+        long size = Files.size(file);
+        if (size < HEADER_BYTES) {
+            return new Stats(0, 0, size); // Empty region
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Region file too large: " + size + " bytes");
+        }
+
+        byte[][] chunks = new byte[CHUNKS_PER_REGION][];
+        int[] timestamps = new int[CHUNKS_PER_REGION];
+        int chunkCount = 0;
+        int changed = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            for (int i = 0; i < CHUNKS_PER_REGION; i++) {
+                int location = region.getInt(i * 4);
+                timestamps[i] = region.getInt(SECTOR_BYTES + i * 4);
+                if (location == 0) {
+                    continue;
+                }
+
+                long sectorOffset = (long) (location >>> 8) * SECTOR_BYTES;
+                if (sectorOffset < HEADER_BYTES || sectorOffset + CHUNK_HEADER_BYTES > size) {
+                    throw new IOException("Chunk " + i + " points outside the file");
+                }
+                int offset = (int) sectorOffset;
+                int length = region.getInt(offset); // Includes the compression byte
+                if (length <= 0 || sectorOffset + 4 + length > size) {
+                    throw new IOException("Chunk " + i + " has invalid length " + length);
+                }
+
+                byte[] chunk = new byte[4 + length];
+                region.get(offset, chunk);
+                chunkCount++;
+
+                byte[] rewritten = rewriteChunk(chunk);
+                if (rewritten != null) {
+                    chunks[i] = rewritten;
+                    changed++;
+                } else {
+                    chunks[i] = chunk;
+                }
+            }
+        }
+
+        if (changed > 0) {
+            write(file, chunks, timestamps);
+        }
+        return new Stats(chunkCount, changed, size);
+    }
+
+    /**
+     * Returns the re-encoded chunk if its biomes changed, or {@code null} to keep it as is.
+     */
+    private byte[] rewriteChunk(byte[] chunk) throws IOException {
+        int type = chunk[4] & 0xFF;
+        if ((type & EXTERNAL_FLAG) != 0) {
+            return null; // Oversized chunks are stored externally; left untouched
+        }
+        RegionFileVersion version = RegionFileVersion.fromId(type);
+        if (version == null) {
+            return null;
+        }
+
+        CompoundTag tag;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(version.wrap(
+                new ByteArrayInputStream(chunk, CHUNK_HEADER_BYTES, chunk.length - CHUNK_HEADER_BYTES))))) {
+            tag = NbtIo.read(in);
+        }
+        if (!remapBiomes(tag)) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(chunk.length);
+        bytes.write(new byte[CHUNK_HEADER_BYTES]); // Filled in below
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(version.wrap(bytes)))) {
+            NbtIo.write(tag, out);
+        }
+
+        byte[] result = bytes.toByteArray();
+        if (sectorsFor(result.length) > MAX_SECTORS) {
+            return null; // Would need external storage; keep the original rather than grow the format
+        }
+        ByteBuffer.wrap(result).putInt(0, result.length - 4).put(4, (byte) type);
+        return result;
+    }
+
+    private boolean remapBiomes(CompoundTag chunk) {
+        if (!chunk.contains("sections", Tag.TAG_LIST)) {
+            return false; // Chunks from before 1.18 keep biomes elsewhere and are upgraded by the game
+        }
+
+        int quartX = QuartPos.fromSection(chunk.getInt("xPos"));
+        int quartZ = QuartPos.fromSection(chunk.getInt("zPos"));
+        boolean changed = false;
+        ListTag sections = chunk.getList("sections", Tag.TAG_COMPOUND);
+        for (int i = 0; i < sections.size(); i++) {
+            CompoundTag section = sections.getCompound(i);
+            if (section.contains("biomes", Tag.TAG_COMPOUND)) {
+                changed |= remapSection(section.getCompound("biomes"), quartX, quartZ);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Remaps one section's 4x4x4 biome container. The stored data uses
+     * {@code ceil(log2(palette size))} bits per entry, indexed as {@code (y << 2 | z) << 2 | x}.
+     */
+    private boolean remapSection(CompoundTag biomes, int quartX, int quartZ) {
+        ListTag palette = biomes.getList("palette", Tag.TAG_STRING);
+        int size = palette.size();
+        if (size == 0) {
+            return false;
+        }
+
+        String[] ids = new String[size];
+        String[] fixed = new String[size];
+        boolean[] positional = new boolean[size];
+        boolean affected = false;
+        for (int i = 0; i < size; i++) {
+            ids[i] = palette.getString(i);
+            positional[i] = table.isPositional(ids[i]);
+            fixed[i] = positional[i] ? null : table.apply(ids[i], 0, 0);
+            affected |= positional[i] || !fixed[i].equals(ids[i]);
+        }
+        if (!affected) {
+            return false;
+        }
+
+        int[] indices = new int[BIOMES_PER_SECTION];
+        int bits = Mth.ceillog2(size);
+        if (bits > 0) {
+            new SimpleBitStorage(bits, BIOMES_PER_SECTION, biomes.getLongArray("data")).unpack(indices);
+        }
+
+        Map<String, Integer> newPalette = new LinkedHashMap<>();
+        int[] newIndices = new int[BIOMES_PER_SECTION];
+        for (int index = 0; index < BIOMES_PER_SECTION; index++) {
+            int entry = indices[index];
+            if (entry >= size) {
+                throw new IllegalStateException("Biome index " + entry + " outside palette of " + size);
+            }
+            String target = positional[entry]
+                    ? table.apply(ids[entry], quartX + (index & 3), quartZ + (index >> 2 & 3))
+                    : fixed[entry];
+            newIndices[index] = newPalette.computeIfAbsent(target, id -> newPalette.size());
+        }
+
+        List<String> newIds = new ArrayList<>(newPalette.keySet());
+        if (newIds.equals(Arrays.asList(ids)) && Arrays.equals(indices, newIndices)) {
+            return false;
+        }
+
+        ListTag newList = new ListTag();
+        for (String id : newIds) {
+            newList.add(StringTag.valueOf(id));
+        }
+        biomes.put("palette", newList);
+
+        int newBits = Mth.ceillog2(newIds.size());
+        if (newBits == 0) {
+            biomes.remove("data");
+        } else {
+            SimpleBitStorage storage = new SimpleBitStorage(newBits, BIOMES_PER_SECTION);
+            for (int index = 0; index < BIOMES_PER_SECTION; index++) {
+                storage.set(index, newIndices[index]);
+            }
+            biomes.putLongArray("data", storage.getRaw());
+        }
+        return true;
+    }
+
+    private static void write(Path file, byte[][] chunks, int[] timestamps) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        int sector = HEADER_BYTES / SECTOR_BYTES;
+        for (int i = 0; i < CHUNKS_PER_REGION; i++) {
+            if (chunks[i] != null) {
+                int sectors = sectorsFor(chunks[i].length);
+                header.putInt(i * 4, sector << 8 | sectors);
+                sector += sectors;
+            }
+            header.putInt(SECTOR_BYTES + i * 4, timestamps[i]);
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, header);
+            for (byte[] chunk : chunks) {
+                if (chunk != null) {
+                    writeFully(out, ByteBuffer.wrap(chunk));
+                    int padding = sectorsFor(chunk.length) * SECTOR_BYTES - chunk.length;
+                    writeFully(out, ByteBuffer.allocate(padding));
+                }
+            }
+            out.force(true);
+        }
+
+        try {
+            replace(temp, file);
+        } catch (IOException e) {
+            // Windows refuses to replace a file while a mapping of it is alive; mappings are
+            // only released when collected
+            System.gc();
+            replace(temp, file);
+        }
+    }
+
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int sectorsFor(int bytes) {
+        return Mth.positiveCeilDiv(bytes, SECTOR_BYTES);
+    }
+}
@@ -0,0 +1,205 @@
+package net.legendaryspy.biome_replacer_neoforge.rewrite;
+
+import net.legendaryspy.biome_replacer_neoforge.rules.CompiledRuleCache;
+import net.legendaryspy.biome_replacer_neoforge.rules.IdReplacementTable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Offline tool that applies the compiled rules of a world to its already generated chunks.
+ * <p>
+ * Usage: {@code RegionRewriter <world folder> [dimension] [threads]}. The server must be
+ * stopped. Rules are taken from the compiled rule cache the mod writes into the world folder,
+ * so start and stop the server once with the new rules before running this. Region files are
+ * rewritten in parallel on a fixed pool; every finished file is appended to a progress file
+ * next to the region folder, so an interrupted run picks up where it left off and a finished
+ * one isn't applied twice. Changing the rules starts a new run.
+ * <p>
+ * Rules are applied to the biomes currently stored in the chunks. Chunks generated with older
+ * rules hold already replaced biomes, which are remapped again from there.
+ */
+public final class RegionRewriter {
+    private static final long REPORT_INTERVAL_SECONDS = 5;
+
+    private final Path world;
+    private final String dimension;
+    private final int threads;
+
+    private final AtomicInteger regionsDone = new AtomicInteger();
+    private final AtomicInteger regionsFailed = new AtomicInteger();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong changedChunks = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public RegionRewriter(Path world, String dimension, int threads) {
+        this.world = world;
+        this.dimension = dimension;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: RegionRewriter <world folder> [dimension] [threads]");
+            System.exit(2);
+        }
+
+        Path world = Path.of(args[0]);
+        String dimension = args.length > 1 ? args[1] : "minecraft:overworld";
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        System.exit(new RegionRewriter(world, dimension, Math.max(1, threads)).run() ? 0 : 1);
+    }
+
+    /**
+     * Rewrites every region file of the dimension. Returns whether all of them succeeded.
+     */
+    public boolean run() throws IOException, InterruptedException {
+        CompiledRuleCache cache = new CompiledRuleCache(CompiledRuleCache.fileIn(world), null);
+        cache.read();
+        IdReplacementTable table = cache.idTable();
+        if (table == null) {
+            System.err.println("No compiled rules found in " + world + ", start the server once with persistCache = true");
+            return false;
+        }
+        if (table.isEmpty()) {
+            System.out.println("The compiled rules don't replace anything, nothing to do");
+            return true;
+        }
+
+        // The server holds this lock while the world is open
+        try (FileChannel lockChannel = FileChannel.open(world.resolve("session.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.tryLock()) {
+            if (lock == null) {
+                System.err.println("The world is in use, stop the server first");
+                return false;
+            }
+            return rewriteAll(table);
+        }
+    }
+
+    private boolean rewriteAll(IdReplacementTable table) throws IOException, InterruptedException {
+        Path regionFolder = dimensionFolder().resolve("region");
+        if (!Files.isDirectory(regionFolder)) {
+            System.err.println("No region folder at " + regionFolder);
+            return false;
+        }
+
+        Path progressFile = regionFolder.resolveSibling("biome_replacer_rewrite.progress");
+        String runId = Long.toHexString(table.fingerprint());
+        Set<String> done = readProgress(progressFile, runId);
+
+        List<Path> regions;
+        try (Stream<Path> files = Files.list(regionFolder)) {
+            regions = files.filter(file -> file.getFileName().toString().endsWith(".mca"))
+                    .filter(file -> !done.contains(file.getFileName().toString()))
+                    .sorted()
+                    .toList();
+        }
+        System.out.println("Rewriting " + regions.size() + " region files in " + regionFolder + " with " + threads +
+                " threads" + (done.isEmpty() ? "" : " (" + done.size() + " already done)"));
+
+        RegionFileRewriter rewriter = new RegionFileRewriter(table);
+        long start = System.nanoTime();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(() -> report(regions.size(), start),
+                REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        try (BufferedWriter progress = Files.newBufferedWriter(progressFile,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (done.isEmpty()) {
+                progress.write(runId);
+                progress.newLine();
+                progress.flush();
+            }
+
+            for (Path region : regions) {
+                pool.execute(() -> {
+                    try {
+                        RegionFileRewriter.Stats stats = rewriter.rewrite(region);
+                        chunks.addAndGet(stats.chunks());
+                        changedChunks.addAndGet(stats.changedChunks());
+                        bytes.addAndGet(stats.bytes());
+                        synchronized (progress) {
+                            progress.write(region.getFileName().toString());
+                            progress.newLine();
+                            progress.flush();
+                        }
+                    } catch (Exception e) {
+                        regionsFailed.incrementAndGet();
+                        System.err.println("Failed to rewrite " + region.getFileName() + ", left unchanged: " + e);
+                    }
+                    regionsDone.incrementAndGet();
+                });
+            }
+
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } finally {
+            reporter.shutdownNow();
+        }
+
+        report(regions.size(), start);
+        if (regionsFailed.get() > 0) {
+            System.err.println(regionsFailed.get() + " region files failed; run again to retry them");
+            return false;
+        }
+        System.out.println("Done. Delete " + progressFile.getFileName() + " to apply the same rules again.");
+        return true;
+    }
+
+    private void report(int total, long start) {
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        System.out.printf(Locale.ROOT, "%d/%d regions, %d chunks (%d changed), %.1f chunks/s, %.1f MB/s%n",
+                regionsDone.get(), total, chunks.get(), changedChunks.get(),
+                chunks.get() / seconds, bytes.get() / seconds / (1024 * 1024));
+    }
+
+    private static Set<String> readProgress(Path progressFile, String runId) throws IOException {
+        Set<String> done = new HashSet<>();
+        if (!Files.isRegularFile(progressFile)) {
+            return done;
+        }
+
+        List<String> lines = Files.readAllLines(progressFile);
+        if (lines.isEmpty() || !lines.get(0).equals(runId)) {
+            // Written for other rules: start over
+            Files.delete(progressFile);
+            return done;
+        }
+        done.addAll(lines.subList(1, lines.size()));
+        return done;
+    }
+
+    // Same layout as DimensionType.getStorageFolder, without loading game classes
+    private Path dimensionFolder() {
+        return switch (dimension) {
+            case "minecraft:overworld" -> world;
+            case "minecraft:the_nether" -> world.resolve("DIM-1");
+            case "minecraft:the_end" -> world.resolve("DIM1");
+            default -> {
+                int separator = dimension.indexOf(':');
+                String namespace = separator >= 0 ? dimension.substring(0, separator) : "minecraft";
+                String path = dimension.substring(separator + 1);
+                yield world.resolve("dimensions").resolve(namespace).resolve(path);
+            }
+        };
+    }
+}
@@ -0,0 +1,84 @@
+package net.legendaryspy.biome_replacer_neoforge.rules;
+
+/**
+ * Vose alias table: samples an index from a fixed discrete distribution in constant time
+ * from a single 64-bit random value, without allocating. The upper 32 bits pick a column,
+ * the lower 32 bits decide between the column and its alias.
+ */
+public final class AliasTable {
+    private static final double UNIT = 0x1.0p-32;
+
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * Builds a table for the given non-negative weights, which need not sum to one.
+     */
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("Alias table needs at least one weight");
+        }
+        double total = 0;
+        for (double weight : weights) {
+            if (!(weight >= 0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Invalid weight " + weight);
+            }
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Weights sum to zero");
+        }
+
+        this.probability = new double[n];
+        this.alias = new int[n];
+
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+
+        // Whatever is left is 1 up to rounding error
+        while (largeCount > 0) {
+            int i = large[--largeCount];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+        while (smallCount > 0) {
+            int i = small[--smallCount];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+    }
+
+    public int sample(long random) {
+        int column = (int) (((random >>> 32) * probability.length) >>> 32);
+        return (random & 0xFFFFFFFFL) * UNIT < probability[column] ? column : alias[column];
+    }
+
+    public int size() {
+        return probability.length;
+    }
+}
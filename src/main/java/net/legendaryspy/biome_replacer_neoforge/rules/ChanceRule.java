@@ -0,0 +1,80 @@
+package net.legendaryspy.biome_replacer_neoforge.rules;
+
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.biome.Biome;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compiled chance rule for one source biome in region mode: a distribution over outcomes,
+ * where a {@code null} outcome keeps the sampled biome. Sequential "target probability"
+ * lines are folded into the same distribution they produce when rolled one after another,
+ * and each region cell draws from it once through an {@link AliasTable}, so a decision is
+ * one hash and two array reads regardless of how many targets the rule has.
+ */
+public final class ChanceRule {
+    private final Holder<Biome>[] outcomes;
+    private final double[] weights;
+    private final AliasTable table;
+    private final long salt;
+
+    @SuppressWarnings("unchecked")
+    public ChanceRule(List<Holder<Biome>> outcomes, double[] weights, long salt) {
+        this.outcomes = outcomes.toArray(new Holder[0]);
+        this.weights = weights;
+        this.table = new AliasTable(weights);
+        this.salt = salt;
+    }
+
+    public Holder<Biome> select(long seed, int cellX, int cellZ, Holder<Biome> original) {
+        Holder<Biome> outcome = outcomes[selectIndex(table, salt, seed, cellX, cellZ)];
+        return outcome != null ? outcome : original;
+    }
+
+    /**
+     * Index of the outcome chosen for a cell.
+     */
+    static int selectIndex(AliasTable table, long salt, long seed, int cellX, int cellZ) {
+        return table.sample(PositionalRandom.mix(PositionalRandom.cellHash(seed, cellX, cellZ) ^ salt));
+    }
+
+    /**
+     * Biomes this rule can place, without the "keep" outcome.
+     */
+    public List<Holder<Biome>> targets() {
+        List<Holder<Biome>> targets = new ArrayList<>(outcomes.length);
+        for (int i = 0; i < outcomes.length; i++) {
+            if (outcomes[i] != null && weights[i] > 0) {
+                targets.add(outcomes[i]);
+            }
+        }
+        return targets;
+    }
+
+    List<Holder<Biome>> outcomes() {
+        return Collections.unmodifiableList(Arrays.asList(outcomes));
+    }
+
+    double[] weights() {
+        return weights;
+    }
+
+    long salt() {
+        return salt;
+    }
+
+    /**
+     * Whether every draw ends in a replacement, making the source biome unreachable.
+     */
+    public boolean alwaysReplaces(Holder<Biome> source) {
+        for (int i = 0; i < outcomes.length; i++) {
+            if (weights[i] > 0 && (outcomes[i] == null || outcomes[i] == source)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
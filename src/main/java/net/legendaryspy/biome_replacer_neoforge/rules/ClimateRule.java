@@ -0,0 +1,108 @@
+package net.legendaryspy.biome_replacer_neoforge.rules;
+
+import net.minecraft.core.Holder;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.Climate;
+
+import java.util.List;
+
+/**
+ * Compiled rule that replaces a biome only inside a box of the climate parameter space.
+ * <p>
+ * It is applied to the parameter list once, when it is rebuilt: each parameter point of a
+ * matching biome is split into the part inside the box, which gets the target, and up to
+ * two parts per bounded axis outside of it, which keep going through the other rules. The
+ * pieces cover exactly the original point, so the search tree answers every climate sample
+ * as before, just with the new biome where the conditions hold.
+ */
+public final class ClimateRule {
+    // Axis order of Climate.ParameterPoint, same as Config.ClimateCondition.AXES
+    private static final int TEMPERATURE = 0;
+    private static final int HUMIDITY = 1;
+    private static final int CONTINENTALNESS = 2;
+    private static final int EROSION = 3;
+    private static final int DEPTH = 4;
+    private static final int WEIRDNESS = 5;
+    private static final int AXES = 6;
+
+    private final ResourceKey<Biome> biome; // null for tag rules
+    private final TagKey<Biome> tag; // null for biome rules
+    private final long[] min;
+    private final long[] max;
+    private final Holder<Biome> target; // null keeps the original biome inside the box
+
+    /**
+     * Creates a rule with the given quantized bounds per axis, inclusive.
+     */
+    ClimateRule(ResourceKey<Biome> biome, TagKey<Biome> tag, long[] min, long[] max, Holder<Biome> target) {
+        this.biome = biome;
+        this.tag = tag;
+        this.min = min;
+        this.max = max;
+        this.target = target;
+    }
+
+    public boolean appliesTo(Holder<Biome> source) {
+        return tag != null ? source.is(tag) : source.is(biome);
+    }
+
+    /**
+     * Biome to place inside the box, or {@code null} to keep the source biome.
+     */
+    public Holder<Biome> target() {
+        return target;
+    }
+
+    /**
+     * Whether the box is empty, e.g. because of contradicting conditions.
+     */
+    boolean isEmpty() {
+        for (int axis = 0; axis < AXES; axis++) {
+            if (min[axis] > max[axis]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the parts of {@code point} outside the box to {@code outside} and returns the part
+     * inside, or {@code null} if they don't overlap (then {@code point} itself is added).
+     */
+    public Climate.ParameterPoint clip(Climate.ParameterPoint point, List<Climate.ParameterPoint> outside) {
+        Climate.Parameter[] parameters = parametersOf(point);
+        for (int axis = 0; axis < AXES; axis++) {
+            if (parameters[axis].max() < min[axis] || parameters[axis].min() > max[axis]) {
+                outside.add(point);
+                return null;
+            }
+        }
+
+        // Peel off what lies below and above the box one axis at a time; what is left is inside
+        for (int axis = 0; axis < AXES; axis++) {
+            Climate.Parameter parameter = parameters[axis];
+            if (parameter.min() < min[axis]) {
+                parameters[axis] = new Climate.Parameter(parameter.min(), min[axis] - 1);
+                outside.add(pointOf(parameters, point.offset()));
+            }
+            if (parameter.max() > max[axis]) {
+                parameters[axis] = new Climate.Parameter(max[axis] + 1, parameter.max());
+                outside.add(pointOf(parameters, point.offset()));
+            }
+            parameters[axis] = new Climate.Parameter(Math.max(parameter.min(), min[axis]), Math.min(parameter.max(), max[axis]));
+        }
+        return pointOf(parameters, point.offset());
+    }
+
+    private static Climate.Parameter[] parametersOf(Climate.ParameterPoint point) {
+        return new Climate.Parameter[]{point.temperature(), point.humidity(), point.continentalness(),
+                point.erosion(), point.depth(), point.weirdness()};
+    }
+
+    private static Climate.ParameterPoint pointOf(Climate.Parameter[] parameters, long offset) {
+        return new Climate.ParameterPoint(parameters[TEMPERATURE], parameters[HUMIDITY], parameters[CONTINENTALNESS],
+                parameters[EROSION], parameters[DEPTH], parameters[WEIRDNESS], offset);
+    }
+}
@@ -0,0 +1,563 @@
+package net.legendaryspy.biome_replacer_neoforge.rules;
+
+import com.mojang.datafixers.util.Pair;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+import net.legendaryspy.biome_replacer_neoforge.config.Config;
+import net.legendaryspy.biome_replacer_neoforge.metrics.ReplacementMetrics;
+import net.legendaryspy.biome_replacer_neoforge.metrics.RuleMetrics;
+import net.minecraft.core.Holder;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.Climate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+import static net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge.log;
+import static net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge.logError;
+import static net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge.logWarn;
+
+/**
+ * Binary cache of compiled rules and optimized parameter lists, kept in the world folder so
+ * a restart with unchanged rules, biomes and tags skips compilation.
+ * <p>
+ * The compiled table is stored under a SHA-256 key over the rule files, the world seed and a
+ * fingerprint of every biome id with its tags; any difference means a fresh compile. Optimized
+ * parameter lists are keyed by the content of their input list instead, since optimizing is a
+ * pure function of it, so they stay valid across rule changes. Biomes are stored by id and
+ * resolved against the live registry; an unknown id, a version mismatch or a damaged file
+ * discards the affected data and falls back to computing it.
+ */
+public final class CompiledRuleCache {
+    private static final int MAGIC = 0x42524331; // "BRC1"
+    // Bump whenever the file layout or the meaning of compiled data changes
+    private static final int FORMAT = 3;
+    private static final int POINT_LONGS = 13; // min/max on six axes plus offset
+
+    private final Path file;
+    private final Registry<Biome> biomeRegistry;
+
+    private byte[] tableKey;
+    private StoredTable storedTable;
+    private final Map<Long, StoredList> lists = new ConcurrentHashMap<>();
+    // Lists looked up this session; only these are written back once any list was used
+    private final Set<Long> usedLists = ConcurrentHashMap.newKeySet();
+    private volatile boolean dirty;
+
+    // Compiled table in registry-independent form
+    private record StoredTable(long seed, int cellShift, int directRuleCount, int tagRuleCount, String[] ruleNames,
+                               String[] sources, String[] targets, int[] ruleOf,
+                               String[] chanceSources, String[][] chanceOutcomes,
+                               double[][] chanceWeights, long[] chanceSalts) {
+    }
+
+    // Optimized parameter list: packed points and biome ids, checked against the input size
+    private record StoredList(int inputSize, long[] points, String[] values) {
+    }
+
+    /**
+     * Location of the cache inside a world folder.
+     */
+    public static Path fileIn(Path worldDirectory) {
+        return worldDirectory.resolve("data").resolve("biome_replacer_neoforge.cache");
+    }
+
+    // The registry may be null when only idTable() is used
+    public CompiledRuleCache(Path file, Registry<Biome> biomeRegistry) {
+        this.file = file;
+        this.biomeRegistry = biomeRegistry;
+    }
+
+    /**
+     * Computes the key for the table compiled from the current rule files. Call this before
+     * reading the files, so a file saved in between can only make the stored key stale.
+     */
+    public byte[] tableKey(long worldSeed) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, FORMAT);
+            update(digest, worldSeed);
+            for (Path source : Config.sourceFiles(Config.filePath())) {
+                digest.update(source.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                byte[] content = Files.readAllBytes(source);
+                update(digest, content.length);
+                digest.update(content);
+            }
+
+            // Registry order matters too: tag rules are resolved by iterating it
+            biomeRegistry.holders().forEach(holder -> {
+                digest.update(holder.key().location().toString().getBytes(StandardCharsets.UTF_8));
+                holder.tags().map(tag -> tag.location().toString()).sorted().forEach(tag -> {
+                    digest.update((byte) '#');
+                    digest.update(tag.getBytes(StandardCharsets.UTF_8));
+                });
+                digest.update((byte) 0);
+            });
+            return digest.digest();
+        } catch (IOException e) {
+            logWarn("Failed to hash config files, compiled rules won't be cached: " + e.getMessage());
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the stored table if it was compiled under {@code key}, or {@code null}.
+     */
+    public synchronized ReplacementTable loadTable(byte[] key, long worldSeed, boolean metrics) {
+        if (key == null || storedTable == null || !Arrays.equals(key, tableKey)) {
+            return null;
+        }
+
+        StoredTable stored = storedTable;
+        Reference2ReferenceOpenHashMap<Holder<Biome>, Holder<Biome>> replacements = new Reference2ReferenceOpenHashMap<>();
+        Reference2IntOpenHashMap<Holder<Biome>> ruleOf = new Reference2IntOpenHashMap<>();
+        for (int i = 0; i < stored.sources().length; i++) {
+            Holder<Biome> source = resolve(stored.sources()[i]);
+            if (source == null) {
+                return null;
+            }
+            ruleOf.put(source, stored.ruleOf()[i]);
+            if (stored.targets()[i] != null) {
+                Holder<Biome> target = resolve(stored.targets()[i]);
+                if (target == null) {
+                    return null;
+                }
+                replacements.put(source, target);
+            }
+        }
+
+        Reference2ReferenceOpenHashMap<Holder<Biome>, ChanceRule> positional = new Reference2ReferenceOpenHashMap<>();
+        for (int i = 0; i < stored.chanceSources().length; i++) {
+            Holder<Biome> source = resolve(stored.chanceSources()[i]);
+            if (source == null) {
+                return null;
+            }
+            List<Holder<Biome>> outcomes = new ArrayList<>(stored.chanceOutcomes()[i].length);
+            for (String id : stored.chanceOutcomes()[i]) {
+                Holder<Biome> outcome = id != null ? resolve(id) : null;
+                if (id != null && outcome == null) {
+                    return null;
+                }
+                outcomes.add(outcome); // null keeps the biome
+            }
+            positional.put(source, new ChanceRule(outcomes, stored.chanceWeights()[i], stored.chanceSalts()[i]));
+        }
+
+        return new ReplacementTable(replacements, positional, List.of(), worldSeed, stored.cellShift(),
+                stored.directRuleCount(), stored.tagRuleCount(),
+                metrics ? new RuleMetrics(List.of(stored.ruleNames()), ruleOf) : null);
+    }
+
+    /**
+     * The stored table by biome id, for tools running without a registry, or {@code null} if
+     * the cache holds no table. Call {@link #read()} first.
+     */
+    public synchronized IdReplacementTable idTable() {
+        StoredTable stored = storedTable;
+        if (stored == null) {
+            return null;
+        }
+
+        Map<String, String> replacements = new HashMap<>();
+        for (int i = 0; i < stored.sources().length; i++) {
+            if (stored.targets()[i] != null) {
+                replacements.put(stored.sources()[i], stored.targets()[i]);
+            }
+        }
+        Map<String, IdReplacementTable.Chance> positional = new HashMap<>();
+        for (int i = 0; i < stored.chanceSources().length; i++) {
+            positional.put(stored.chanceSources()[i], new IdReplacementTable.Chance(
+                    stored.chanceOutcomes()[i], stored.chanceWeights()[i], stored.chanceSalts()[i]));
+        }
+        return new IdReplacementTable(replacements, positional, stored.seed(), stored.cellShift());
+    }
+
+    /**
+     * Stores a freshly compiled table. {@code ruleOf} maps every biome covered by a rule,
+     * replaced or not, to its index in {@code ruleNames}.
+     */
+    public synchronized void storeTable(byte[] key, ReplacementTable table, List<String> ruleNames,
+                                        Reference2IntOpenHashMap<Holder<Biome>> ruleOf) {
+        if (key == null) {
+            return;
+        }
+
+        int count = ruleOf.size();
+        String[] sources = new String[count];
+        String[] targets = new String[count];
+        int[] rules = new int[count];
+        int i = 0;
+        for (Reference2IntMap.Entry<Holder<Biome>> entry : ruleOf.reference2IntEntrySet()) {
+            Holder<Biome> target = table.replacements().get(entry.getKey());
+            sources[i] = idOf(entry.getKey());
+            targets[i] = target != null ? idOf(target) : null;
+            rules[i] = entry.getIntValue();
+            i++;
+        }
+
+        int chanceCount = table.positional().size();
+        String[] chanceSources = new String[chanceCount];
+        String[][] chanceOutcomes = new String[chanceCount][];
+        double[][] chanceWeights = new double[chanceCount][];
+        long[] chanceSalts = new long[chanceCount];
+        i = 0;
+        for (Map.Entry<Holder<Biome>, ChanceRule> entry : table.positional().entrySet()) {
+            ChanceRule rule = entry.getValue();
+            chanceSources[i] = idOf(entry.getKey());
+            chanceOutcomes[i] = rule.outcomes().stream()
+                    .map(outcome -> outcome != null ? idOf(outcome) : null)
+                    .toArray(String[]::new);
+            chanceWeights[i] = rule.weights();
+            chanceSalts[i] = rule.salt();
+            i++;
+        }
+
+        tableKey = key;
+        storedTable = new StoredTable(table.seed(), table.cellShift(), table.directRuleCount(), table.tagRuleCount(),
+                ruleNames.toArray(new String[0]), sources, targets, rules,
+                chanceSources, chanceOutcomes, chanceWeights, chanceSalts);
+        dirty = true;
+    }
+
+    /**
+     * Drops the stored table, e.g. after it was changed in place by a tag update, so the
+     * next start compiles from scratch.
+     */
+    public synchronized void invalidateTable() {
+        if (storedTable != null) {
+            tableKey = null;
+            storedTable = null;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Returns the optimized form of {@code values}, computing and remembering it on a miss.
+     * Safe to call from concurrent worldgen threads.
+     */
+    public List<Pair<Climate.ParameterPoint, Holder<Biome>>> optimized(
+            List<Pair<Climate.ParameterPoint, Holder<Biome>>> values,
+            UnaryOperator<List<Pair<Climate.ParameterPoint, Holder<Biome>>>> optimizer) {
+        long fingerprint = fingerprint(values);
+        usedLists.add(fingerprint);
+        StoredList stored = lists.get(fingerprint);
+        if (stored != null && stored.inputSize() == values.size()) {
+            List<Pair<Climate.ParameterPoint, Holder<Biome>>> cached = unpack(stored);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        List<Pair<Climate.ParameterPoint, Holder<Biome>>> result = optimizer.apply(values);
+        lists.put(fingerprint, pack(values.size(), result));
+        dirty = true;
+        return result;
+    }
+
+    /**
+     * Reads the cache file if there is one. Anything unreadable is logged and ignored.
+     */
+    public synchronized void read() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                log("Ignoring compiled rule cache from another version");
+                return;
+            }
+
+            String[] ids = new String[in.readInt()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = in.readUTF();
+            }
+
+            if (in.readBoolean()) {
+                byte[] key = new byte[in.readInt()];
+                in.readFully(key);
+                StoredTable table = readTable(in, ids);
+                tableKey = key;
+                storedTable = table;
+            }
+
+            int listCount = in.readInt();
+            for (int i = 0; i < listCount; i++) {
+                long fingerprint = in.readLong();
+                int inputSize = in.readInt();
+                int size = in.readInt();
+                long[] points = new long[size * POINT_LONGS];
+                String[] values = new String[size];
+                for (int j = 0; j < size; j++) {
+                    for (int k = 0; k < POINT_LONGS; k++) {
+                        points[j * POINT_LONGS + k] = in.readLong();
+                    }
+                    values[j] = ids[in.readInt()];
+                }
+                lists.put(fingerprint, new StoredList(inputSize, points, values));
+            }
+            log("Loaded compiled rule cache (" + lists.size() + " parameter lists)");
+        } catch (IOException | RuntimeException e) {
+            // A half-read file must not leave partial state behind
+            tableKey = null;
+            storedTable = null;
+            lists.clear();
+            logWarn("Discarding unreadable compiled rule cache: " + e);
+        }
+    }
+
+    /**
+     * Writes the cache if anything changed since it was last read or written. The file is
+     * replaced atomically, so a crash mid-write leaves the previous version intact.
+     */
+    public synchronized void saveIfDirty() {
+        if (!dirty) {
+            return;
+        }
+        if (!usedLists.isEmpty()) {
+            // Drop lists left behind by older rules or removed dimensions
+            lists.keySet().retainAll(usedLists);
+        }
+
+        Object2IntOpenHashMap<String> idIndex = new Object2IntOpenHashMap<>();
+        List<String> ids = new ArrayList<>();
+        StoredTable table = storedTable;
+        if (table != null) {
+            for (String id : table.sources()) indexId(id, idIndex, ids);
+            for (String id : table.targets()) indexId(id, idIndex, ids);
+            for (String id : table.chanceSources()) indexId(id, idIndex, ids);
+            for (String[] targets : table.chanceOutcomes()) {
+                for (String id : targets) indexId(id, idIndex, ids);
+            }
+        }
+        lists.values().forEach(list -> {
+            for (String id : list.values()) indexId(id, idIndex, ids);
+        });
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeInt(ids.size());
+                for (String id : ids) {
+                    out.writeUTF(id);
+                }
+
+                out.writeBoolean(table != null);
+                if (table != null) {
+                    out.writeInt(tableKey.length);
+                    out.write(tableKey);
+                    writeTable(out, table, idIndex);
+                }
+
+                out.writeInt(lists.size());
+                for (Map.Entry<Long, StoredList> entry : lists.entrySet()) {
+                    StoredList list = entry.getValue();
+                    out.writeLong(entry.getKey());
+                    out.writeInt(list.inputSize());
+                    out.writeInt(list.values().length);
+                    for (int j = 0; j < list.values().length; j++) {
+                        for (int k = 0; k < POINT_LONGS; k++) {
+                            out.writeLong(list.points()[j * POINT_LONGS + k]);
+                        }
+                        out.writeInt(idIndex.getInt(list.values()[j]));
+                    }
+                }
+            }
+
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            dirty = false;
+        } catch (IOException e) {
+            logError("Failed to write compiled rule cache", e);
+        }
+    }
+
+    private static StoredTable readTable(DataInputStream in, String[] ids) throws IOException {
+        long seed = in.readLong();
+        int cellShift = in.readInt();
+        int directRuleCount = in.readInt();
+        int tagRuleCount = in.readInt();
+
+        String[] ruleNames = new String[in.readInt()];
+        for (int i = 0; i < ruleNames.length; i++) {
+            ruleNames[i] = in.readUTF();
+        }
+
+        int count = in.readInt();
+        String[] sources = new String[count];
+        String[] targets = new String[count];
+        int[] ruleOf = new int[count];
+        for (int i = 0; i < count; i++) {
+            sources[i] = ids[in.readInt()];
+            int target = in.readInt();
+            targets[i] = target >= 0 ? ids[target] : null;
+            ruleOf[i] = in.readInt();
+        }
+
+        int chanceCount = in.readInt();
+        String[] chanceSources = new String[chanceCount];
+        String[][] chanceOutcomes = new String[chanceCount][];
+        double[][] chanceWeights = new double[chanceCount][];
+        long[] chanceSalts = new long[chanceCount];
+        for (int i = 0; i < chanceCount; i++) {
+            chanceSources[i] = ids[in.readInt()];
+            chanceSalts[i] = in.readLong();
+            int size = in.readInt();
+            chanceOutcomes[i] = new String[size];
+            chanceWeights[i] = new double[size];
+            for (int j = 0; j < size; j++) {
+                int outcome = in.readInt();
+                chanceOutcomes[i][j] = outcome >= 0 ? ids[outcome] : null;
+                chanceWeights[i][j] = in.readDouble();
+            }
+        }
+
+        return new StoredTable(seed, cellShift, directRuleCount, tagRuleCount, ruleNames, sources, targets, ruleOf,
+                chanceSources, chanceOutcomes, chanceWeights, chanceSalts);
+    }
+
+    private static void writeTable(DataOutputStream out, StoredTable table, Object2IntOpenHashMap<String> idIndex) throws IOException {
+        out.writeLong(table.seed());
+        out.writeInt(table.cellShift());
+        out.writeInt(table.directRuleCount());
+        out.writeInt(table.tagRuleCount());
+
+        out.writeInt(table.ruleNames().length);
+        for (String name : table.ruleNames()) {
+            out.writeUTF(name);
+        }
+
+        out.writeInt(table.sources().length);
+        for (int i = 0; i < table.sources().length; i++) {
+            out.writeInt(idIndex.getInt(table.sources()[i]));
+            out.writeInt(table.targets()[i] != null ? idIndex.getInt(table.targets()[i]) : -1);
+            out.writeInt(table.ruleOf()[i]);
+        }
+
+        out.writeInt(table.chanceSources().length);
+        for (int i = 0; i < table.chanceSources().length; i++) {
+            out.writeInt(idIndex.getInt(table.chanceSources()[i]));
+            out.writeLong(table.chanceSalts()[i]);
+            out.writeInt(table.chanceOutcomes()[i].length);
+            for (int j = 0; j < table.chanceOutcomes()[i].length; j++) {
+                String outcome = table.chanceOutcomes()[i][j];
+                out.writeInt(outcome != null ? idIndex.getInt(outcome) : -1);
+                out.writeDouble(table.chanceWeights()[i][j]);
+            }
+        }
+    }
+
+    private List<Pair<Climate.ParameterPoint, Holder<Biome>>> unpack(StoredList stored) {
+        List<Pair<Climate.ParameterPoint, Holder<Biome>>> result = new ArrayList<>(stored.values().length);
+        long[] p = stored.points();
+        for (int i = 0; i < stored.values().length; i++) {
+            Holder<Biome> value = resolve(stored.values()[i]);
+            if (value == null) {
+                return null;
+            }
+            int o = i * POINT_LONGS;
+            result.add(Pair.of(new Climate.ParameterPoint(
+                    new Climate.Parameter(p[o], p[o + 1]),
+                    new Climate.Parameter(p[o + 2], p[o + 3]),
+                    new Climate.Parameter(p[o + 4], p[o + 5]),
+                    new Climate.Parameter(p[o + 6], p[o + 7]),
+                    new Climate.Parameter(p[o + 8], p[o + 9]),
+                    new Climate.Parameter(p[o + 10], p[o + 11]),
+                    p[o + 12]), value));
+        }
+        return result;
+    }
+
+    private static StoredList pack(int inputSize, List<Pair<Climate.ParameterPoint, Holder<Biome>>> values) {
+        long[] points = new long[values.size() * POINT_LONGS];
+        String[] ids = new String[values.size()];
+        for (int i = 0; i < values.size(); i++) {
+            writePoint(values.get(i).getFirst(), points, i * POINT_LONGS);
+            ids[i] = idOf(values.get(i).getSecond());
+        }
+        return new StoredList(inputSize, points, ids);
+    }
+
+    private static long fingerprint(List<Pair<Climate.ParameterPoint, Holder<Biome>>> values) {
+        long[] point = new long[POINT_LONGS];
+        long hash = values.size();
+        for (Pair<Climate.ParameterPoint, Holder<Biome>> entry : values) {
+            writePoint(entry.getFirst(), point, 0);
+            for (long component : point) {
+                hash = PositionalRandom.mix(hash ^ component);
+            }
+            hash = PositionalRandom.mix(hash ^ idOf(entry.getSecond()).hashCode());
+        }
+        return hash;
+    }
+
+    private static void writePoint(Climate.ParameterPoint point, long[] out, int offset) {
+        Climate.Parameter[] parameters = {
+                point.temperature(), point.humidity(), point.continentalness(),
+                point.erosion(), point.depth(), point.weirdness()
+        };
+        for (int axis = 0; axis < parameters.length; axis++) {
+            out[offset + axis * 2] = parameters[axis].min();
+            out[offset + axis * 2 + 1] = parameters[axis].max();
+        }
+        out[offset + 12] = point.offset();
+    }
+
+    private Holder<Biome> resolve(String id) {
+        ResourceLocation location = ResourceLocation.tryParse(id);
+        if (location == null) {
+            return null;
+        }
+        return biomeRegistry.getHolder(ResourceKey.create(Registries.BIOME, location)).orElse(null);
+    }
+
+    private static String idOf(Holder<Biome> holder) {
+        return holder.unwrapKey().map(ResourceKey::location).map(ResourceLocation::toString)
+                .orElseThrow(() -> new IllegalStateException("Unregistered biome " + holder));
+    }
+
+    private static void indexId(String id, Object2IntOpenHashMap<String> idIndex, List<String> ids) {
+        if (id != null && !idIndex.containsKey(id)) {
+            idIndex.put(id, ids.size());
+            ids.add(id);
+        }
+    }
+
+    private static void update(MessageDigest digest, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            digest.update((byte) (value >>> (i * 8)));
+        }
+    }
+}
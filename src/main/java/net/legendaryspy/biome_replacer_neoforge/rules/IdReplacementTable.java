@@ -0,0 +1,81 @@
+package net.legendaryspy.biome_replacer_neoforge.rules;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * Biome-id counterpart of {@link ReplacementTable}, read from a {@link CompiledRuleCache} by
+ * tools that run without a game registry. Decisions are identical to the live table: fixed
+ * replacements first, then region chance rules on the result.
+ */
+public final class IdReplacementTable {
+    private final Map<String, String> replacements;
+    private final Map<String, Chance> positional;
+    private final long seed;
+    private final int cellShift;
+
+    // A null outcome keeps the biome
+    record Chance(String[] outcomes, double[] weights, long salt, AliasTable table) {
+        Chance(String[] outcomes, double[] weights, long salt) {
+            this(outcomes, weights, salt, new AliasTable(weights));
+        }
+    }
+
+    IdReplacementTable(Map<String, String> replacements, Map<String, Chance> positional, long seed, int cellShift) {
+        this.replacements = replacements;
+        this.positional = positional;
+        this.seed = seed;
+        this.cellShift = cellShift;
+    }
+
+    /**
+     * Whether the replacement of {@code id} depends on its position.
+     */
+    public boolean isPositional(String id) {
+        return positional.containsKey(apply(id));
+    }
+
+    /**
+     * Biome that replaces {@code id} at the given quart position, or {@code id} itself.
+     */
+    public String apply(String id, int quartX, int quartZ) {
+        String fixed = apply(id);
+        Chance chance = positional.get(fixed);
+        if (chance == null) {
+            return fixed;
+        }
+        String outcome = chance.outcomes()[ChanceRule.selectIndex(chance.table(), chance.salt(), seed,
+                quartX >> cellShift, quartZ >> cellShift)];
+        return outcome != null ? outcome : fixed;
+    }
+
+    private String apply(String id) {
+        return replacements.getOrDefault(id, id);
+    }
+
+    /**
+     * Hash of the table's contents, identical for tables that make the same decisions.
+     */
+    public long fingerprint() {
+        long hash = PositionalRandom.mix(seed ^ cellShift);
+        for (String source : new TreeSet<>(replacements.keySet())) {
+            hash = PositionalRandom.mix(hash ^ source.hashCode());
+            hash = PositionalRandom.mix(hash ^ replacements.get(source).hashCode());
+        }
+        for (String source : new TreeSet<>(positional.keySet())) {
+            Chance chance = positional.get(source);
+            hash = PositionalRandom.mix(hash ^ source.hashCode());
+            hash = PositionalRandom.mix(hash ^ chance.salt());
+            for (int i = 0; i < chance.outcomes().length; i++) {
+                hash = PositionalRandom.mix(hash ^ Objects.hashCode(chance.outcomes()[i]));
+                hash = PositionalRandom.mix(hash ^ Double.doubleToLongBits(chance.weights()[i]));
+            }
+        }
+        return hash;
+    }
+
+    public boolean isEmpty() {
+        return replacements.isEmpty() && positional.isEmpty();
+    }
+}
@@ -0,0 +1,34 @@
+package net.legendaryspy.biome_replacer_neoforge.rules;
+
+/**
+ * Stateless SplitMix64-based hashing used for per-region replacement decisions.
+ * Every method is a pure function of its inputs, so decisions are identical on every
+ * worldgen thread and need neither {@code Random} instances nor locks.
+ */
+public final class PositionalRandom {
+    private PositionalRandom() {
+    }
+
+    /**
+     * SplitMix64 finalizer.
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Hash of a horizontal cell for the given world seed.
+     */
+    public static long cellHash(long seed, int cellX, int cellZ) {
+        return mix(seed ^ mix(((long) cellX << 32) ^ (cellZ & 0xFFFFFFFFL)));
+    }
+
+    /**
+     * Salt identifying a rule, derived from where it was declared.
+     */
+    public static long ruleSalt(String origin, int index) {
+        return mix(((long) origin.hashCode() << 32) | (index & 0xFFFFFFFFL));
+    }
+}
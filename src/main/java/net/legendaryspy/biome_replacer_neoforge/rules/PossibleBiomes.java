@@ -0,0 +1,68 @@
+package net.legendaryspy.biome_replacer_neoforge.rules;
+
+import net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge;
+import net.minecraft.core.Holder;
+import net.minecraft.core.HolderSet;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.levelgen.placement.PlacedFeature;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Corrects the possible-biome set of a biome source after replacement. That set feeds feature
+ * sorting and structure biome checks, so biomes that can no longer generate are dropped and
+ * every biome a rule can place is added.
+ */
+public final class PossibleBiomes {
+    private PossibleBiomes() {
+    }
+
+    /**
+     * For sources whose biomes have already gone through the fixed table (the replaced
+     * parameter list): adds region-mode targets and drops sources they always replace.
+     */
+    public static Set<Holder<Biome>> expandPositional(Stream<Holder<Biome>> biomes, ReplacementTable table) {
+        Set<Holder<Biome>> result = new LinkedHashSet<>();
+        biomes.forEach(biome -> {
+            ChanceRule rule = table.chanceRule(biome);
+            if (rule == null) {
+                result.add(biome);
+                return;
+            }
+            if (!rule.alwaysReplaces(biome)) {
+                result.add(biome);
+            }
+            result.addAll(rule.targets());
+        });
+        return result;
+    }
+
+    /**
+     * For sources that pick from a fixed biome list: applies both fixed and region-mode rules.
+     */
+    public static Set<Holder<Biome>> replace(Stream<Holder<Biome>> biomes, ReplacementTable table) {
+        return expandPositional(biomes.map(table::apply), table);
+    }
+
+    public static void logChange(String source, Collection<Holder<Biome>> before, Collection<Holder<Biome>> after, long nanos) {
+        if (before.size() == after.size() && before.containsAll(after)) {
+            return;
+        }
+        BiomeReplacerNeoforge.log("Possible biomes for " + source + ": " + before.size() + " -> " + after.size() +
+                ", placed feature entries: " + countFeatures(before) + " -> " + countFeatures(after) +
+                " (computed in " + nanos / 1000 + " us)");
+    }
+
+    private static int countFeatures(Collection<Holder<Biome>> biomes) {
+        int count = 0;
+        for (Holder<Biome> biome : biomes) {
+            for (HolderSet<PlacedFeature> step : biome.value().getGenerationSettings().features()) {
+                count += step.size();
+            }
+        }
+        return count;
+    }
+}
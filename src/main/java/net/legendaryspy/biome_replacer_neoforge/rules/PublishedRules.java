@@ -0,0 +1,65 @@
+package net.legendaryspy.biome_replacer_neoforge.rules;
+
+import net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge;
+import net.legendaryspy.biome_replacer_neoforge.climate.ParameterListRebuilder;
+import net.legendaryspy.biome_replacer_neoforge.climate.ReplacedParameters;
+import net.legendaryspy.biome_replacer_neoforge.config.Config;
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.Climate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Everything worldgen reads from a reload: the settings, the table compiled from them and the
+ * replaced parameter lists of the server's biome sources, keyed by the identity of their
+ * original lists. Built completely before it is published, so worldgen threads only look the
+ * lists of the server's dimensions up and never rebuild one themselves.
+ * <p>
+ * Dimensions using the same preset hold the same original list, so they share one replaced
+ * copy and its search tree instead of each building their own. A biome source created after a
+ * publish gets its list added by {@link BiomeReplacerNeoforge#replacedParameters}, shared the
+ * same way.
+ */
+public record PublishedRules(Config.Settings settings, ReplacementTable table,
+                             Map<Climate.ParameterList<Holder<Biome>>, ReplacedParameters> parameters) {
+    public static final PublishedRules EMPTY = new PublishedRules(Config.Settings.DEFAULTS, ReplacementTable.EMPTY, Map.of());
+
+    /**
+     * The prebuilt replaced copy of {@code original}, or {@code null} if it wasn't one of the
+     * lists this was built for.
+     */
+    public ReplacedParameters parametersFor(Climate.ParameterList<Holder<Biome>> original) {
+        return parameters.get(original);
+    }
+
+    /**
+     * Returns these rules with replaced copies of {@code originals} added, building the ones
+     * that are missing on the calling thread. Each distinct original list is built once.
+     */
+    public PublishedRules withParametersFor(Collection<Climate.ParameterList<Holder<Biome>>> originals) {
+        Map<Climate.ParameterList<Holder<Biome>>, ReplacedParameters> built = null;
+        Map<Climate.ParameterList<Holder<Biome>>, Long> buildNanos = new IdentityHashMap<>();
+        for (Climate.ParameterList<Holder<Biome>> original : originals) {
+            ReplacedParameters existing = built != null ? built.get(original) : parameters.get(original);
+            if (existing != null) {
+                Long nanos = buildNanos.get(original);
+                BiomeReplacerNeoforge.log("Sharing one replaced parameter list of " + existing.parameters().values().size() +
+                        " points with another biome source" +
+                        (nanos != null ? ", skipping a " + nanos / 1_000_000 + " ms rebuild" : ""));
+                continue;
+            }
+            if (built == null) {
+                built = new IdentityHashMap<>(parameters);
+            }
+
+            long start = System.nanoTime();
+            built.put(original, new ReplacedParameters(table, ParameterListRebuilder.rebuild(original, table, settings)));
+            buildNanos.put(original, System.nanoTime() - start);
+        }
+        return built == null ? this : new PublishedRules(settings, table, Collections.unmodifiableMap(built));
+    }
+}
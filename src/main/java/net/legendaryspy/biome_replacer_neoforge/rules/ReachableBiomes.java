@@ -0,0 +1,26 @@
+package net.legendaryspy.biome_replacer_neoforge.rules;
+
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.biome.Biome;
+
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Biomes a source can still produce under one table, used to answer biome searches for
+ * biomes that were replaced away without sampling the search area.
+ */
+public record ReachableBiomes(ReplacementTable table, Set<Holder<Biome>> biomes) {
+
+    /**
+     * Whether a search with this predicate can find anything at all.
+     */
+    public boolean anyMatch(Predicate<Holder<Biome>> predicate) {
+        for (Holder<Biome> biome : biomes) {
+            if (predicate.test(biome)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
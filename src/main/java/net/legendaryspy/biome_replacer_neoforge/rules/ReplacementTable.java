@@ -0,0 +1,164 @@
+package net.legendaryspy.biome_replacer_neoforge.rules;
+
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+import net.legendaryspy.biome_replacer_neoforge.metrics.RuleMetrics;
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.biome.Biome;
+
+import java.util.List;
+
+/**
+ * Immutable holder-to-holder replacement table, compiled after the biome registry and its tags
+ * are bound, and recompiled as a whole on every rules reload. Lookups are a single identity-hash probe with no
+ * allocation, so this is safe to call from any worldgen thread.
+ * <p>
+ * Fixed replacements are applied to the climate parameter list. In region mode, chance
+ * rules are kept separately and decided per sampled position by {@link #applyAt}. Climate
+ * rules are applied to the parameter list too, by splitting its points.
+ */
+public final class ReplacementTable {
+    public static final ReplacementTable EMPTY = new ReplacementTable(
+            new Reference2ReferenceOpenHashMap<>(), new Reference2ReferenceOpenHashMap<>(), List.of(), 0L, 0, 0, 0, null);
+
+    // Never mutated after construction; callers hand over ownership of the maps
+    private final Reference2ReferenceOpenHashMap<Holder<Biome>, Holder<Biome>> replacements;
+    private final Reference2ReferenceOpenHashMap<Holder<Biome>, ChanceRule> positional;
+    private final boolean hasPositional;
+    private final List<ClimateRule> climateRules; // In declaration order
+    private final long seed;
+    private final int cellShift;
+    private final int directRuleCount;
+    private final int tagRuleCount;
+    private final RuleMetrics metrics; // null when metrics are disabled
+
+    public ReplacementTable(Reference2ReferenceOpenHashMap<Holder<Biome>, Holder<Biome>> replacements,
+                            Reference2ReferenceOpenHashMap<Holder<Biome>, ChanceRule> positional,
+                            List<ClimateRule> climateRules, long seed, int cellShift, int directRuleCount, int tagRuleCount, RuleMetrics metrics) {
+        replacements.trim();
+        positional.trim();
+        this.replacements = replacements;
+        this.positional = positional;
+        this.hasPositional = !positional.isEmpty();
+        this.climateRules = List.copyOf(climateRules);
+        this.seed = seed;
+        this.cellShift = cellShift;
+        this.directRuleCount = directRuleCount;
+        this.tagRuleCount = tagRuleCount;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the biome that should generate in place of {@code original}, or {@code original}
+     * itself when no fixed rule applies. Counted as a sample in the metrics.
+     */
+    public Holder<Biome> apply(Holder<Biome> original) {
+        Holder<Biome> replacement = replacements.get(original);
+        if (metrics != null) {
+            metrics.recordSample(original, replacement != null);
+        }
+        return replacement != null ? replacement : original;
+    }
+
+    /**
+     * Like {@link #apply}, for a point of a climate parameter list being rebuilt. Counted as a
+     * point in the metrics.
+     */
+    public Holder<Biome> applyToPoint(Holder<Biome> original) {
+        Holder<Biome> replacement = replacements.get(original);
+        if (metrics != null) {
+            metrics.recordPoint(original, replacement != null);
+        }
+        return replacement != null ? replacement : original;
+    }
+
+    /**
+     * Applies region-mode chance rules to a biome sampled at the given quart position.
+     * Every quart in the same cell gets the same decision, so biome patches stay whole.
+     */
+    public Holder<Biome> applyAt(Holder<Biome> sampled, int quartX, int quartZ) {
+        ChanceRule rule = hasPositional ? positional.get(sampled) : null;
+        if (rule == null) {
+            return sampled;
+        }
+        Holder<Biome> selected = rule.select(seed, quartX >> cellShift, quartZ >> cellShift, sampled);
+        if (metrics != null) {
+            metrics.recordSample(sampled, selected != sampled);
+        }
+        return selected;
+    }
+
+    /**
+     * Like {@link #applyAt}, but not counted in the metrics; for previews of what worldgen
+     * would produce.
+     */
+    public Holder<Biome> previewAt(Holder<Biome> sampled, int quartX, int quartZ) {
+        ChanceRule rule = hasPositional ? positional.get(sampled) : null;
+        return rule == null ? sampled : rule.select(seed, quartX >> cellShift, quartZ >> cellShift, sampled);
+    }
+
+    /**
+     * Returns the region-mode rule for a sampled biome, or {@code null} if it has none.
+     */
+    public ChanceRule chanceRule(Holder<Biome> sampled) {
+        return hasPositional ? positional.get(sampled) : null;
+    }
+
+    /**
+     * Climate rules in the order they apply, each to the parts of points earlier ones left over.
+     */
+    public List<ClimateRule> climateRules() {
+        return climateRules;
+    }
+
+    public boolean isEmpty() {
+        return replacements.isEmpty() && !hasPositional && climateRules.isEmpty();
+    }
+
+    public int size() {
+        return replacements.size();
+    }
+
+    public int positionalSize() {
+        return positional.size();
+    }
+
+    public int directRuleCount() {
+        return directRuleCount;
+    }
+
+    public int tagRuleCount() {
+        return tagRuleCount;
+    }
+
+    // Raw contents for CompiledRuleCache; must not be modified
+    Reference2ReferenceOpenHashMap<Holder<Biome>, Holder<Biome>> replacements() {
+        return replacements;
+    }
+
+    Reference2ReferenceOpenHashMap<Holder<Biome>, ChanceRule> positional() {
+        return positional;
+    }
+
+    /**
+     * Copy of this table with the given climate rules, which aren't part of the compiled rule cache.
+     */
+    ReplacementTable withClimateRules(List<ClimateRule> rules) {
+        return rules.isEmpty() ? this : new ReplacementTable(replacements, positional, rules, seed, cellShift,
+                directRuleCount, tagRuleCount, metrics);
+    }
+
+    long seed() {
+        return seed;
+    }
+
+    int cellShift() {
+        return cellShift;
+    }
+
+    /**
+     * Per-rule counters, or {@code null} when metrics are disabled.
+     */
+    public RuleMetrics metrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,500 @@
+package net.legendaryspy.biome_replacer_neoforge.rules;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+import net.legendaryspy.biome_replacer_neoforge.config.Config;
+import net.legendaryspy.biome_replacer_neoforge.config.Config.BiomeReplacement;
+import net.legendaryspy.biome_replacer_neoforge.config.Config.WeightedTarget;
+import net.legendaryspy.biome_replacer_neoforge.metrics.ReplacementMetrics;
+import net.legendaryspy.biome_replacer_neoforge.metrics.RuleMetrics;
+import net.minecraft.core.Holder;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.Climate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge.log;
+import static net.legendaryspy.biome_replacer_neoforge.BiomeReplacerNeoforge.logWarn;
+
+/**
+ * Reads the config and compiles it into a {@link ReplacementTable} for one biome registry.
+ * All intermediate state is local to the compiler, so a reload can run on any thread while
+ * worldgen keeps reading the previously published table.
+ */
+public class RuleCompiler {
+    private final Registry<Biome> biomeRegistry;
+    private final long worldSeed;
+    private Config.Settings settings = Config.Settings.DEFAULTS; // Settings the current table was compiled from
+    private final Map<ResourceKey<Biome>, List<ReplacementEntry>> directRules = new LinkedHashMap<>();
+    private final Map<TagKey<Biome>, List<ReplacementEntry>> tagRules = new LinkedHashMap<>();
+    private TagRuleIndex tagIndex; // null until compiled
+    private List<ClimateRule> climateRules = List.of();
+    // Rule of every biome covered by one, kept for CompiledRuleCache and tag updates
+    private final Map<String, Integer> ruleIndexes = new LinkedHashMap<>();
+    private List<String> ruleNames = List.of();
+    private final Reference2IntOpenHashMap<Holder<Biome>> ruleOf = new Reference2IntOpenHashMap<>();
+
+    // Class to store biome replacement with probability
+    private static class ReplacementEntry {
+        public final List<ResourceKey<Biome>> targets = new ArrayList<>(); // null keeps the original biome
+        public final DoubleArrayList weights = new DoubleArrayList();
+        public final double probability;
+        private AliasTable table; // Built on first pick, after missing targets were removed
+
+        public ReplacementEntry(double probability) {
+            this.probability = probability;
+        }
+
+        // Picks one target by weight
+        ResourceKey<Biome> pick(long random) {
+            if (targets.size() == 1) {
+                return targets.get(0);
+            }
+            if (table == null) {
+                table = new AliasTable(weights.toDoubleArray());
+            }
+            return targets.get(table.sample(random));
+        }
+
+        // Whether the entry always applies and always places the same biome
+        boolean isFixed() {
+            return probability >= 1.0 && targets.size() == 1;
+        }
+    }
+
+    // The rule a biome resolved to, named as in the config
+    private record ResolvedRule(String name, List<ReplacementEntry> entries) {
+    }
+
+    public RuleCompiler(Registry<Biome> biomeRegistry, long worldSeed) {
+        this.biomeRegistry = biomeRegistry;
+        this.worldSeed = worldSeed;
+    }
+
+    /**
+     * Reads the config file and compiles it, reusing the table stored in {@code cache} (if not
+     * {@code null}) when the rule files, world seed, biomes and tags all match the ones it was
+     * compiled from. Failures to read the file propagate, so a reload of a broken file keeps
+     * the previous rules instead of publishing an empty table. The settings that were read are
+     * available from {@link #settings()} afterwards.
+     */
+    public ReplacementTable compile(CompiledRuleCache cache) {
+        if (cache == null) {
+            return compile(Config.read());
+        }
+
+        // Hash before reading, see CompiledRuleCache.tableKey
+        byte[] key = cache.tableKey(worldSeed);
+        Config.Settings read = Config.read();
+        if (!read.persistCache()) {
+            return compile(read);
+        }
+        settings = read;
+
+        long start = System.nanoTime();
+        ReplacementTable cached = cache.loadTable(key, worldSeed, read.metrics());
+        if (cached != null) {
+            cached = cached.withClimateRules(compileClimateRules());
+            log("Loaded " + cached.directRuleCount() + " direct rules and " + cached.tagRuleCount() +
+                    " tag rules from the compiled rule cache in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return cached;
+        }
+
+        ReplacementTable table = compile(read);
+        cache.storeTable(key, table, ruleNames, ruleOf);
+        return table;
+    }
+
+    /**
+     * Compiles the rules of already parsed settings without reading the config file.
+     */
+    public ReplacementTable compile(Config.Settings settings) {
+        this.settings = settings;
+        long start = System.nanoTime();
+        loadRules();
+        verifyBiomes();
+        climateRules = compileClimateRules();
+        ReplacementTable table = compileRules();
+
+        long nanos = System.nanoTime() - start;
+        if (settings.metrics()) {
+            ReplacementMetrics.recordCompile(nanos);
+        }
+        log("Rules compiled in " + nanos / 1_000_000 + " ms");
+        return table;
+    }
+
+    /**
+     * Re-resolves tag rules after the biome tags were rebound, e.g. by a datapack reload.
+     * Only biomes whose applicable tag rule changed are recompiled; everything else is copied
+     * from {@code previous}, which must have been compiled by this instance. Returns
+     * {@code previous} itself when nothing changed.
+     */
+    public ReplacementTable updateTags(ReplacementTable previous) {
+        if (tagIndex == null) {
+            // Table came from the compiled rule cache, there is no index to diff against
+            return compile(settings);
+        }
+
+        long start = System.nanoTime();
+        BitSet changed = tagIndex.refresh();
+        if (changed.isEmpty()) {
+            log("Biome tags changed, no tag rule is affected");
+            return previous;
+        }
+
+        Reference2ReferenceOpenHashMap<Holder<Biome>, Holder<Biome>> compiled = new Reference2ReferenceOpenHashMap<>(previous.replacements());
+        Reference2ReferenceOpenHashMap<Holder<Biome>, ChanceRule> positional = new Reference2ReferenceOpenHashMap<>(previous.positional());
+        for (int id = changed.nextSetBit(0); id >= 0; id = changed.nextSetBit(id + 1)) {
+            Holder.Reference<Biome> holder = biomeRegistry.getHolder(id).orElse(null);
+            if (holder != null) {
+                compiled.remove(holder);
+                positional.remove(holder);
+                ruleOf.removeInt(holder);
+                compileBiome(holder, compiled, positional);
+            }
+        }
+
+        log("Biome tags changed, recompiled rules of " + changed.cardinality() + " biomes in " +
+                (System.nanoTime() - start) / 1_000_000 + " ms");
+        return buildTable(compiled, positional);
+    }
+
+    /**
+     * Settings the current table was compiled from.
+     */
+    public Config.Settings settings() {
+        return settings;
+    }
+
+    private void loadRules() {
+        directRules.clear();
+        tagRules.clear();
+
+        // Load direct replacement rules
+        settings.rules().forEach((key, value) -> {
+            ResourceKey<Biome> oldBiome = createBiomeKey(key);
+            ReplacementEntry entry = createEntry(value);
+            if (oldBiome != null && entry != null) {
+                directRules.computeIfAbsent(oldBiome, k -> new ArrayList<>()).add(entry);
+                log("Rule added: " + oldBiome + " -> " + describe(value));
+            }
+        });
+
+        // Load tag-based replacement rules
+        settings.tagRules().forEach((tagName, replacements) -> {
+            try {
+                // Using ResourceLocation.parse instead of constructor
+                ResourceLocation tagLocation = ResourceLocation.parse(tagName);
+                TagKey<Biome> tagKey = TagKey.create(Registries.BIOME, tagLocation);
+
+                for (BiomeReplacement replacement : replacements) {
+                    ReplacementEntry entry = createEntry(replacement);
+                    if (entry != null) {
+                        tagRules.computeIfAbsent(tagKey, k -> new ArrayList<>()).add(entry);
+                        log("Tag rule added: " + tagKey + " -> " + describe(replacement));
+                    }
+                }
+            } catch (Exception e) {
+                logWarn("Invalid tag rule: " + tagName);
+            }
+        });
+
+        log("Loaded " + countEntries(directRules) + " direct biome replacement rules and " +
+                countEntries(tagRules) + " tag rules");
+    }
+
+    private static ReplacementEntry createEntry(BiomeReplacement replacement) {
+        ReplacementEntry entry = new ReplacementEntry(replacement.probability);
+        for (WeightedTarget target : replacement.targets) {
+            ResourceKey<Biome> key = target.keeps() ? null : createBiomeKey(target.biome);
+            if (key != null || target.keeps()) {
+                entry.targets.add(key);
+                entry.weights.add(target.weight);
+            }
+        }
+        return entry.targets.isEmpty() ? null : entry;
+    }
+
+    private static String describe(BiomeReplacement replacement) {
+        if (replacement.targets.size() == 1) {
+            return replacement.targets.get(0).biome + " (prob: " + replacement.probability + ")";
+        }
+        StringBuilder builder = new StringBuilder();
+        for (WeightedTarget target : replacement.targets) {
+            if (!builder.isEmpty()) builder.append(", ");
+            builder.append(target.weight).append(' ').append(target.biome);
+        }
+        return builder.toString();
+    }
+
+    private void verifyBiomes() {
+        log("Verifying biome existence...");
+
+        // Verify direct rules
+        directRules.entrySet().removeIf(entry -> {
+            boolean sourceExists = biomeRegistry.containsKey(entry.getKey().location());
+            if (!sourceExists) {
+                logWarn("Removing invalid source biome: " + entry.getKey());
+                return true;
+            }
+
+            // Filter invalid target biomes
+            entry.getValue().removeIf(this::removeMissingTargets);
+            return entry.getValue().isEmpty();
+        });
+
+        // Verify tag rules
+        tagRules.entrySet().removeIf(entry -> {
+            // Filter invalid target biomes
+            entry.getValue().removeIf(this::removeMissingTargets);
+            return entry.getValue().isEmpty();
+        });
+    }
+
+    // Drops targets that aren't registered and returns whether nothing is left
+    private boolean removeMissingTargets(ReplacementEntry replacement) {
+        for (int i = replacement.targets.size() - 1; i >= 0; i--) {
+            ResourceKey<Biome> target = replacement.targets.get(i);
+            if (target != null && !biomeRegistry.containsKey(target.location())) {
+                logWarn("Removing invalid target biome: " + target);
+                replacement.targets.remove(i);
+                replacement.weights.removeDouble(i);
+            }
+        }
+        return replacement.targets.isEmpty();
+    }
+
+    private static ResourceKey<Biome> createBiomeKey(String biomeId) {
+        try {
+            // Use ResourceLocation.parse instead of constructor
+            ResourceLocation location = ResourceLocation.parse(biomeId);
+            return ResourceKey.create(Registries.BIOME, location);
+        } catch (Exception e) {
+            logWarn("Invalid biome ID: " + biomeId);
+            return null;
+        }
+    }
+
+    /**
+     * Resolves every registered biome against the rule maps and stores the outcome in an
+     * identity table. In world mode chance rules are rolled here, seeded by world seed and
+     * biome id, so the same world always gets the same result. In region mode they are
+     * compiled into {@link ChanceRule}s and decided per sampled position instead.
+     */
+    private ReplacementTable compileRules() {
+        // Tag rules are prioritized in the order they were declared in
+        tagIndex = new TagRuleIndex(biomeRegistry, List.copyOf(tagRules.keySet()));
+        ruleIndexes.clear();
+        ruleOf.clear();
+
+        Reference2ReferenceOpenHashMap<Holder<Biome>, Holder<Biome>> compiled = new Reference2ReferenceOpenHashMap<>();
+        Reference2ReferenceOpenHashMap<Holder<Biome>, ChanceRule> positional = new Reference2ReferenceOpenHashMap<>();
+        biomeRegistry.holders().forEach(holder -> compileBiome(holder, compiled, positional));
+        return buildTable(compiled, positional);
+    }
+
+    private void compileBiome(Holder.Reference<Biome> holder,
+                              Reference2ReferenceOpenHashMap<Holder<Biome>, Holder<Biome>> compiled,
+                              Reference2ReferenceOpenHashMap<Holder<Biome>, ChanceRule> positional) {
+        ResolvedRule resolved = findReplacements(holder);
+        if (resolved == null) {
+            return;
+        }
+        List<ReplacementEntry> replacements = resolved.entries();
+
+        ruleOf.put(holder, (int) ruleIndexes.computeIfAbsent(resolved.name(), name -> ruleIndexes.size()));
+
+        if (settings.regionChance() && !replacements.get(0).isFixed()) {
+            ChanceRule rule = compileChanceRule(replacements, PositionalRandom.ruleSalt(resolved.name(), 0));
+            if (rule != null) {
+                positional.put(holder, rule);
+            }
+            return;
+        }
+
+        ResourceKey<Biome> targetKey = rollReplacement(replacements, holder.key().location().toString());
+        if (targetKey == null || targetKey.equals(holder.key())) {
+            return;
+        }
+
+        Holder<Biome> target = getBiomeHolder(targetKey);
+        if (target != null) {
+            compiled.put(holder, target);
+        }
+    }
+
+    private ReplacementTable buildTable(Reference2ReferenceOpenHashMap<Holder<Biome>, Holder<Biome>> compiled,
+                                        Reference2ReferenceOpenHashMap<Holder<Biome>, ChanceRule> positional) {
+        ruleNames = List.copyOf(ruleIndexes.keySet());
+
+        int cellShift = 31 - Integer.numberOfLeadingZeros(Math.max(1, settings.regionSize() >> 2));
+        log("Compiled " + compiled.size() + " biome replacements" +
+                (positional.isEmpty() ? "" : " and " + positional.size() + " region chance rules") +
+                (climateRules.isEmpty() ? "" : ", plus " + climateRules.size() + " climate rules"));
+        // Metrics get their own copy, the compiler keeps updating ruleOf on tag changes
+        return new ReplacementTable(compiled, positional, climateRules, worldSeed, cellShift,
+                countEntries(directRules), countEntries(tagRules),
+                settings.metrics() ? new RuleMetrics(ruleNames, new Reference2IntOpenHashMap<>(ruleOf)) : null);
+    }
+
+    /**
+     * Folds the entries of a rule into the single distribution that rolling them one after
+     * another produces: an entry is reached with the probability that every earlier one
+     * missed, and splits its own probability over its targets by weight. Whatever is left
+     * keeps the original biome.
+     */
+    private ChanceRule compileChanceRule(List<ReplacementEntry> replacements, long salt) {
+        Map<Holder<Biome>, Double> outcomes = new LinkedHashMap<>(); // null key keeps the original
+        double remaining = 1.0;
+
+        for (ReplacementEntry entry : replacements) {
+            double total = entry.weights.doubleStream().sum();
+            for (int i = 0; i < entry.targets.size(); i++) {
+                ResourceKey<Biome> key = entry.targets.get(i);
+                Holder<Biome> target = key != null ? getBiomeHolder(key) : null;
+                if (key != null && target == null) {
+                    continue;
+                }
+                outcomes.merge(target, remaining * entry.probability * entry.weights.getDouble(i) / total, Double::sum);
+            }
+            remaining *= 1.0 - entry.probability;
+
+            // Entries after a certain one can never be reached
+            if (remaining <= 0.0) {
+                break;
+            }
+        }
+        if (remaining > 0.0) {
+            outcomes.merge(null, remaining, Double::sum);
+        }
+
+        Double keep = outcomes.get(null);
+        if (outcomes.isEmpty() || keep != null && keep >= 1.0) {
+            return null;
+        }
+        double[] weights = outcomes.values().stream().mapToDouble(Double::doubleValue).toArray();
+        return new ChanceRule(new ArrayList<>(outcomes.keySet()), weights, salt);
+    }
+
+    private Holder<Biome> getBiomeHolder(ResourceKey<Biome> key) {
+        Holder<Biome> holder = biomeRegistry.getHolder(key).orElse(null);
+        if (holder == null) {
+            logWarn("Failed to get holder for replacement biome: " + key.location());
+        }
+        return holder;
+    }
+
+    private ResolvedRule findReplacements(Holder.Reference<Biome> holder) {
+        // Direct replacements take priority over tags
+        List<ReplacementEntry> directReplacements = directRules.get(holder.key());
+        if (directReplacements != null && !directReplacements.isEmpty()) {
+            return new ResolvedRule(holder.key().location().toString(), directReplacements);
+        }
+
+        int tagRule = tagIndex.ruleOf(holder);
+        if (tagRule >= 0) {
+            TagKey<Biome> tag = tagIndex.tag(tagRule);
+            return new ResolvedRule("#" + tag.location(), tagRules.get(tag));
+        }
+        return null;
+    }
+
+    private ResourceKey<Biome> rollReplacement(List<ReplacementEntry> replacements, String origin) {
+        // Seed with a combination of world seed and biome id so the same biome
+        // is consistently replaced the same way for a given world seed
+        long combinedSeed = worldSeed ^ origin.hashCode();
+        Random localRandom = new Random(combinedSeed);
+
+        // Roll for each replacement based on probability, then pick one of its targets by weight.
+        // Single target entries take no extra draw, so existing worlds keep their result
+        for (ReplacementEntry entry : replacements) {
+            if (localRandom.nextDouble() <= entry.probability) {
+                return entry.targets.size() == 1 ? entry.targets.get(0) : entry.pick(localRandom.nextLong());
+            }
+        }
+
+        // If no replacement was selected, keep the original
+        return null;
+    }
+
+    /**
+     * Compiles the conditional rules of the config. Their chance and weighted targets are
+     * always decided once per world, since the outcome becomes part of the parameter list.
+     */
+    private List<ClimateRule> compileClimateRules() {
+        List<ClimateRule> compiled = new ArrayList<>();
+        List<Config.ClimateRule> rules = settings.climateRules();
+        for (int i = 0; i < rules.size(); i++) {
+            Config.ClimateRule rule = rules.get(i);
+            ReplacementEntry entry = createEntry(rule.replacement);
+            if (entry == null || removeMissingTargets(entry)) {
+                continue;
+            }
+
+            ResourceKey<Biome> biome = null;
+            TagKey<Biome> tag = null;
+            try {
+                if (rule.source.startsWith("#")) {
+                    tag = TagKey.create(Registries.BIOME, ResourceLocation.parse(rule.source.substring(1)));
+                } else {
+                    biome = ResourceKey.create(Registries.BIOME, ResourceLocation.parse(rule.source));
+                    if (!biomeRegistry.containsKey(biome)) {
+                        logWarn("Removing climate rule for invalid source biome: " + biome);
+                        continue;
+                    }
+                }
+            } catch (Exception e) {
+                logWarn("Invalid climate rule source: " + rule.source);
+                continue;
+            }
+
+            long[] min = new long[Config.ClimateCondition.AXES.size()];
+            long[] max = new long[min.length];
+            Arrays.fill(min, Long.MIN_VALUE);
+            Arrays.fill(max, Long.MAX_VALUE);
+            for (Config.ClimateCondition condition : rule.conditions) {
+                int axis = Config.ClimateCondition.AXES.indexOf(condition.axis);
+                long bound = Climate.quantizeCoord(condition.value);
+                if (condition.above) {
+                    min[axis] = Math.max(min[axis], bound + 1);
+                } else {
+                    max[axis] = Math.min(max[axis], bound - 1);
+                }
+            }
+
+            // Rolled like other rules, but seeded by its position so each climate rule rolls on its own
+            ResourceKey<Biome> targetKey = rollReplacement(List.of(entry), rule.source + "@" + i);
+            Holder<Biome> target = targetKey != null ? getBiomeHolder(targetKey) : null;
+            if (targetKey != null && target == null) {
+                continue;
+            }
+            ClimateRule climateRule = new ClimateRule(biome, tag, min, max, target);
+            if (climateRule.isEmpty()) {
+                logWarn("Climate rule for " + rule.source + " has conditions that can never hold together");
+                continue;
+            }
+            if (targetKey == null && entry.probability < 1.0) {
+                continue; // Didn't roll in this world
+            }
+            compiled.add(climateRule);
+        }
+        return compiled;
+    }
+
+    private static int countEntries(Map<?, List<ReplacementEntry>> rules) {
+        return rules.values().stream().mapToInt(List::size).sum();
+    }
+}
@@ -0,0 +1,101 @@
+package net.legendaryspy.biome_replacer_neoforge.rules;
+
+import net.minecraft.core.Holder;
+import net.minecraft.core.Registry;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.biome.Biome;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Inverted index from biome registry id to the tag rule that applies to it.
+ * <p>
+ * Each tag rule keeps a bitset of the registry ids in its tag. When a biome is in several
+ * tags, the rule declared first wins, so the outcome no longer depends on map iteration
+ * order. Building costs one pass over each tag's members instead of a tag check per biome
+ * and rule, and {@link #refresh()} only recomputes the biomes whose membership changed.
+ */
+final class TagRuleIndex {
+    private final Registry<Biome> registry;
+    private final List<TagKey<Biome>> tags; // Priority order, highest first
+    private final BitSet[] members;
+    private final int[] ruleOf; // By registry id, -1 if no tag rule applies
+
+    TagRuleIndex(Registry<Biome> registry, List<TagKey<Biome>> tags) {
+        this.registry = registry;
+        this.tags = tags;
+        this.members = new BitSet[tags.size()];
+        this.ruleOf = new int[registry.size()];
+        Arrays.fill(ruleOf, -1);
+
+        for (int rule = 0; rule < tags.size(); rule++) {
+            members[rule] = collect(tags.get(rule));
+            for (int id = members[rule].nextSetBit(0); id >= 0; id = members[rule].nextSetBit(id + 1)) {
+                if (ruleOf[id] < 0) {
+                    ruleOf[id] = rule;
+                }
+            }
+        }
+    }
+
+    /**
+     * Index of the tag rule that applies to {@code biome}, or -1.
+     */
+    int ruleOf(Holder<Biome> biome) {
+        int id = registry.getId(biome.value());
+        return id >= 0 && id < ruleOf.length ? ruleOf[id] : -1;
+    }
+
+    TagKey<Biome> tag(int rule) {
+        return tags.get(rule);
+    }
+
+    /**
+     * Re-reads the members of every tag after tags were rebound and returns the registry ids
+     * whose applicable rule changed.
+     */
+    BitSet refresh() {
+        BitSet touched = new BitSet();
+        for (int rule = 0; rule < tags.size(); rule++) {
+            BitSet current = collect(tags.get(rule));
+            if (!current.equals(members[rule])) {
+                BitSet difference = (BitSet) current.clone();
+                difference.xor(members[rule]);
+                touched.or(difference);
+                members[rule] = current;
+            }
+        }
+
+        BitSet changed = new BitSet();
+        for (int id = touched.nextSetBit(0); id >= 0; id = touched.nextSetBit(id + 1)) {
+            int rule = firstRuleContaining(id);
+            if (rule != ruleOf[id]) {
+                ruleOf[id] = rule;
+                changed.set(id);
+            }
+        }
+        return changed;
+    }
+
+    private int firstRuleContaining(int id) {
+        for (int rule = 0; rule < members.length; rule++) {
+            if (members[rule].get(id)) {
+                return rule;
+            }
+        }
+        return -1;
+    }
+
+    private BitSet collect(TagKey<Biome> tag) {
+        BitSet bits = new BitSet(ruleOf.length);
+        for (Holder<Biome> biome : registry.getTagOrEmpty(tag)) {
+            int id = registry.getId(biome.value());
+            if (id >= 0 && id < ruleOf.length) {
+                bits.set(id);
+            }
+        }
+        return bits;
+    }
+}